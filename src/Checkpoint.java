@@ -0,0 +1,260 @@
+/**
+ * Checkpoint.java: A snapshot of how far a Solver's search has got, which
+ * 	a later search of the same board and bank can resume from.
+ *
+ * The search is deterministic, so the snapshot only has to record the
+ * 	choice made at each depth of the current path (as piece * 4 +
+ * 	rotation) and where in its list of candidates the deepest cell is to
+ * 	carry on; everything else is rebuilt by replaying the choices. A
+ * 	signature of the board size, bank and search settings makes sure a
+ * 	checkpoint is only replayed into a search it was taken from.
+ *
+ * A search split over several threads is made of units, each searching
+ * 	below a few fixed cells, and is saved as the checkpoints of the units
+ * 	that have not finished. The fixed cells are the start of each path.
+ *
+ * On disk a checkpoint is a few hundred bytes: a header, the path of each
+ * 	unit as ints and a CRC32 of everything before it. It is written to a
+ * 	temporary file that is then renamed over the old one, so a crash while
+ * 	writing leaves the previous checkpoint intact.
+ *
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+public final class Checkpoint {
+
+	//Marks the start of a checkpoint file: "PZCK"
+	private static final int MAGIC = 0x505A434B;
+	private static final int VERSION = 2;
+	//The most units, or path entries, readUnits() makes room for before
+	//they have arrived
+	private static final int PATH_CHUNK = 1024;
+
+	private final long signature;
+	private final long nodes;
+	private final int start;
+	private final int[] path;
+	private final int resume;
+
+	/**
+	 * Constructor used by Solver.toCheckpoint(). The path is not copied.
+	 * @param signature Identifies the board, bank and settings of the search
+	 * @param nodes The placements made by the search so far
+	 * @param start The number of cells that were fixed with push()
+	 * @param path piece * 4 + rotation placed at each depth of the current path
+	 * @param resume The position in the deepest cell's candidates to go on from
+	 */
+	Checkpoint(long signature, long nodes, int start, int[] path, int resume) {
+		this.signature = signature;
+		this.nodes = nodes;
+		this.start = start;
+		this.path = path;
+		this.resume = resume;
+	}
+
+	long getSignature() {
+		return signature;
+	}
+
+	int getStart() {
+		return start;
+	}
+
+	int getResume() {
+		return resume;
+	}
+
+	/**
+	 * @return The choice made at a depth of the path
+	 */
+	int getChoice(int depth) {
+		return path[depth];
+	}
+
+	/**
+	 * @return The number of cells filled on the path, fixed cells included
+	 */
+	public int getDepth() {
+		return path.length;
+	}
+
+	/**
+	 * @return The number of placements made by the search before the
+	 * 	checkpoint, including those made before any earlier resume
+	 */
+	public long getNodeCount() {
+		return nodes;
+	}
+
+	/**
+	 * Writes the checkpoint, with its checksum, to a stream.
+	 * @param out Where to write it
+	 */
+	public void write(OutputStream out) throws IOException {
+		write(new Checkpoint[] { this }, out);
+	}
+
+	/**
+	 * Writes the checkpoints of the units of a search, with one checksum,
+	 * 	to a stream.
+	 * @param units The checkpoint of each unit not yet finished
+	 * @param out Where to write them
+	 */
+	public static void write(Checkpoint[] units, OutputStream out) throws IOException {
+		CheckedOutputStream checked = new CheckedOutputStream(out, new CRC32());
+		DataOutputStream data = new DataOutputStream(checked);
+		data.writeInt(MAGIC);
+		data.writeInt(VERSION);
+		data.writeInt(units.length);
+		for (Checkpoint c : units) {
+			data.writeLong(c.signature);
+			data.writeLong(c.nodes);
+			data.writeInt(c.start);
+			data.writeInt(c.resume);
+			data.writeInt(c.path.length);
+			for (int choice : c.path)
+				data.writeInt(choice);
+		}
+		data.writeLong(checked.getChecksum().getValue());
+		data.flush();
+	}
+
+	/**
+	 * Reads a checkpoint of a single path written by write().
+	 * @param in Where to read it from
+	 * @return The checkpoint
+	 * @throws IOException If the stream does not hold a whole, undamaged
+	 * 	checkpoint of one path
+	 */
+	public static Checkpoint read(InputStream in) throws IOException {
+		Checkpoint[] units = readUnits(in);
+		if (units.length != 1)
+			throw new IOException("Not a checkpoint of one path");
+		return units[0];
+	}
+
+	/**
+	 * Reads the checkpoints of the units of a search written by write().
+	 * @param in Where to read them from
+	 * @return The checkpoints, none if every unit had finished
+	 * @throws IOException If the stream does not hold a whole, undamaged checkpoint
+	 */
+	public static Checkpoint[] readUnits(InputStream in) throws IOException {
+		CheckedInputStream checked = new CheckedInputStream(in, new CRC32());
+		DataInputStream data = new DataInputStream(checked);
+		if (data.readInt() != MAGIC || data.readInt() != VERSION)
+			throw new IOException("Not a checkpoint");
+		int count = data.readInt();
+		if (count < 0)
+			throw new IOException("Damaged checkpoint");
+		//No length is yet known to be undamaged, so room is made only as
+		//the entries arrive, and a stream that ends early throws
+		Checkpoint[] units = new Checkpoint[Math.min(count, PATH_CHUNK)];
+		for (int u = 0; u < count; u++) {
+			if (u == units.length)
+				units = Arrays.copyOf(units, (int) Math.min(count, 2L * units.length));
+			units[u] = readUnit(data);
+		}
+		long sum = checked.getChecksum().getValue();
+		if (data.readLong() != sum)
+			throw new IOException("Damaged checkpoint");
+		return units;
+	}
+
+	private static Checkpoint readUnit(DataInputStream data) throws IOException {
+		long signature = data.readLong();
+		long nodes = data.readLong();
+		int start = data.readInt();
+		int resume = data.readInt();
+		int length = data.readInt();
+		if (length < 0 || start < 0 || start > length)
+			throw new IOException("Damaged checkpoint");
+		int[] path = new int[Math.min(length, PATH_CHUNK)];
+		for (int d = 0; d < length; d++) {
+			if (d == path.length)
+				path = Arrays.copyOf(path, (int) Math.min(length, 2L * path.length));
+			path[d] = data.readInt();
+		}
+		return new Checkpoint(signature, nodes, start, path, resume);
+	}
+
+	/**
+	 * Saves the checkpoint to a file, replacing it only once the new one
+	 * 	has been written in full.
+	 * @param file The checkpoint file
+	 */
+	public void save(File file) throws IOException {
+		save(new Checkpoint[] { this }, file);
+	}
+
+	/**
+	 * Saves the checkpoints of the units of a search to a file, replacing
+	 * 	it only once the new one has been written in full.
+	 * @param units The checkpoint of each unit not yet finished
+	 * @param file The checkpoint file
+	 */
+	public static void save(Checkpoint[] units, File file) throws IOException {
+		File temp = new File(file.getPath() + ".tmp");
+		FileOutputStream out = new FileOutputStream(temp);
+		try {
+			write(units, new BufferedOutputStream(out));
+			out.getFD().sync();
+		} finally {
+			out.close();
+		}
+		try {
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Loads a checkpoint of a single path saved by save().
+	 * @param file The checkpoint file
+	 * @return The checkpoint, or null if there is no file, it is damaged or
+	 * 	it holds a search split into units
+	 */
+	public static Checkpoint load(File file) {
+		Checkpoint[] units = loadUnits(file);
+		return units != null && units.length == 1 ? units[0] : null;
+	}
+
+	/**
+	 * Loads the checkpoints of the units of a search saved by save().
+	 * @param file The checkpoint file
+	 * @return The checkpoints, or null if there is no file or it is damaged
+	 */
+	public static Checkpoint[] loadUnits(File file) {
+		if (!file.isFile())
+			return null;
+		try {
+			InputStream in = new BufferedInputStream(new FileInputStream(file));
+			try {
+				return readUnits(in);
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,210 @@
+/**
+ * CheckpointWriter.java: Saves a search's checkpoints to a file on a
+ * 	thread of its own.
+ *
+ * The search only checks, every few thousand placements, whether the
+ * 	interval has passed, and if it has, copies its current path into a
+ * 	Checkpoint and hands it over. Writing the file, and waiting for the
+ * 	disk, happens on the writer's thread, so the search carries on at once.
+ *
+ * A search split into units hands the writer the units' starting
+ * 	checkpoints, and each unit's Solver gets a writer of its own from
+ * 	forUnit(). A unit's writer only records the unit's latest snapshot;
+ * 	whenever the interval of the file has passed, the snapshots of every
+ * 	unit not yet finished are saved together.
+ *
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+public class CheckpointWriter {
+
+	//How often, in milliseconds, a checkpoint is written when no interval is given
+	public static final long DEFAULT_INTERVAL = 60000;
+
+	private final File file;
+	private final long interval;
+	//The thread the file is written on; null for the writer of a unit
+	private final ExecutorService writer;
+	//The writer that saves the file, and the unit this one's snapshots are
+	//of; null and -1 for the writer that saves the file
+	private final CheckpointWriter parent;
+	private final int unit;
+
+	//The latest snapshot of each unit, null once it has finished; null if
+	//the search is not split into units
+	private Checkpoint[] units;
+
+	//System.nanoTime() at which the next checkpoint is due
+	private volatile long due;
+
+	private volatile int written;
+	private volatile IOException failure;
+
+	/**
+	 * Constructor that takes the file to save to and how often to save.
+	 * @param file The checkpoint file, which is replaced each time
+	 * @param intervalMillis The time between checkpoints, in milliseconds
+	 */
+	public CheckpointWriter(File file, long intervalMillis) {
+		this.file = file;
+		interval = Math.max(0, intervalMillis) * 1000000L;
+		due = System.nanoTime() + interval;
+		writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "Checkpoint writer");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		parent = null;
+		unit = -1;
+	}
+
+	private CheckpointWriter(CheckpointWriter parent, int unit) {
+		file = parent.file;
+		interval = parent.interval;
+		due = System.nanoTime() + interval;
+		writer = null;
+		this.parent = parent;
+		this.unit = unit;
+	}
+
+	/**
+	 * Splits the search into units, which from now on are saved together.
+	 * @param start The checkpoint each unit starts from
+	 */
+	public void setUnits(Checkpoint[] start) {
+		synchronized (this) {
+			units = start.clone();
+		}
+	}
+
+	/**
+	 * @param unit The index of a unit given to setUnits()
+	 * @return A writer for the Solver searching the unit, which records
+	 * 	its snapshots for this writer to save
+	 */
+	public CheckpointWriter forUnit(int unit) {
+		return new CheckpointWriter(this, unit);
+	}
+
+	/**
+	 * Drops a unit whose search has finished, so it is not saved again.
+	 * @param unit The index of the unit
+	 */
+	public void finished(int unit) {
+		synchronized (this) {
+			units[unit] = null;
+		}
+	}
+
+	/**
+	 * @return Whether the interval since the last checkpoint has passed
+	 */
+	public boolean isDue() {
+		return System.nanoTime() - due >= 0;
+	}
+
+	/**
+	 * Queues a checkpoint to be saved, and starts the next interval.
+	 * @param c The checkpoint
+	 */
+	public void submit(final Checkpoint c) {
+		due = System.nanoTime() + interval;
+		if (parent != null) {
+			parent.record(unit, c);
+			return;
+		}
+		writer.execute(new Runnable() {
+			public void run() {
+				try {
+					c.save(file);
+					written++;
+				} catch (IOException e) {
+					failure = e;
+				}
+			}
+		});
+	}
+
+	private void record(int unit, Checkpoint c) {
+		synchronized (this) {
+			units[unit] = c;
+		}
+		if (isDue())
+			submitUnits();
+	}
+
+	/**
+	 * Queues the latest snapshots of the units to be saved, and starts the
+	 * 	next interval. They are gathered on the writer's thread, so the
+	 * 	file holds whatever was recorded last before it is written.
+	 */
+	private void submitUnits() {
+		due = System.nanoTime() + interval;
+		writer.execute(new Runnable() {
+			public void run() {
+				ArrayList<Checkpoint> left = new ArrayList<Checkpoint>();
+				synchronized (CheckpointWriter.this) {
+					for (Checkpoint c : units)
+						if (c != null)
+							left.add(c);
+				}
+				try {
+					Checkpoint.save(left.toArray(new Checkpoint[left.size()]), file);
+					written++;
+				} catch (IOException e) {
+					failure = e;
+				}
+			}
+		});
+	}
+
+	/**
+	 * Waits for every queued checkpoint to be saved and stops the thread.
+	 * 	The units of a split search are saved once more first, unless the
+	 * 	search has finished.
+	 * @param done Whether the search has finished, in which case there is
+	 * 	nothing left to resume and the file is deleted
+	 */
+	public void finish(boolean done) {
+		if (units != null && !done)
+			submitUnits();
+		writer.shutdown();
+		try {
+			writer.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (done)
+			file.delete();
+	}
+
+	/**
+	 * @return The number of checkpoints saved
+	 */
+	public int getWriteCount() {
+		return written;
+	}
+
+	/**
+	 * @return The error from the last checkpoint that could not be saved, or null
+	 */
+	public IOException getFailure() {
+		return failure;
+	}
+
+	/**
+	 * @return The checkpoint file
+	 */
+	public File getFile() {
+		return file;
+	}
+}
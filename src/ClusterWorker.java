@@ -0,0 +1,220 @@
+/**
+ * ClusterWorker.java: A worker process of a SolverCluster.
+ *
+ * It connects to the coordinator on the loopback address, reads the board
+ * 	and bank, and then searches whatever units it is given. Units shorter
+ * 	than the split depth are split into one unit per candidate of their
+ * 	next cell, which go on the front of the queue; the back of the queue,
+ * 	where the biggest units are, is what the coordinator may take to hand
+ * 	to other workers. The search itself runs on the main thread, while a
+ * 	second thread reads the coordinator's messages.
+ *
+ * Started by SolverCluster as: java ClusterWorker port
+ *
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+public class ClusterWorker {
+
+	private final DataInputStream in;
+	private final DataOutputStream out;
+
+	//The board with nothing fixed, copied for every unit
+	private Solver root;
+	private int splitDepth;
+
+	//Units waiting to be searched, guarded by itself, and how many units
+	//the coordinator has sent, which wakes the search even when the unit
+	//is taken back again before it gets to it
+	private final ArrayDeque<int[]> queue = new ArrayDeque<int[]>();
+	private int received;
+
+	//Stopped when the coordinator says so; the search polls it
+	private final SearchMonitor monitor = new SearchMonitor();
+
+	//Placements made since the last message to the coordinator
+	private long nodes;
+
+	/**
+	 * Constructor that connects to the coordinator.
+	 * @param port The coordinator's port on the loopback address
+	 */
+	public ClusterWorker(int port) throws IOException {
+		Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+		socket.setTcpNoDelay(true);
+		in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+		out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+	}
+
+	/**
+	 * Reads the job and searches units until the coordinator says to stop.
+	 */
+	public void run() throws IOException, InterruptedException {
+		readJob();
+		Thread reader = new Thread(new Runnable() {
+			public void run() {
+				listen();
+			}
+		}, "Cluster worker");
+		reader.setDaemon(true);
+		reader.start();
+		while (!monitor.isStopped()) {
+			int[] unit;
+			synchronized (queue) {
+				unit = queue.poll();
+				if (unit == null) {
+					send(SolverCluster.IDLE);
+					int seen = received;
+					while (received == seen && !monitor.isStopped())
+						queue.wait();
+					continue;
+				}
+			}
+			search(unit);
+		}
+	}
+
+	private void readJob() throws IOException {
+		if (in.readByte() != SolverCluster.JOB)
+			throw new IOException("Expected a job");
+		int width = in.readInt();
+		int height = in.readInt();
+		int ordering = in.readInt();
+		boolean pruning = in.readBoolean();
+		splitDepth = in.readInt();
+		PuzzlePiece[] pieces = new PuzzlePiece[in.readInt()];
+		for (int p = 0; p < pieces.length; p++) {
+			boolean present = in.readBoolean();
+			int packed = in.readInt();
+			if (present)
+				pieces[p] = new PuzzlePiece(PuzzlePiece.unpack(packed, Solver.NORTH),
+						PuzzlePiece.unpack(packed, Solver.EAST), PuzzlePiece.unpack(packed, Solver.SOUTH),
+						PuzzlePiece.unpack(packed, Solver.WEST));
+		}
+		root = new Solver(width, height, pieces);
+		root.setOrdering(ordering);
+		root.setSymmetryPruning(pruning);
+		root.setMonitor(monitor);
+	}
+
+	/**
+	 * Splits a short unit into the queue, or searches a long one.
+	 */
+	private void search(int[] unit) throws IOException {
+		Solver s = new Solver(root);
+		for (int k : unit)
+			if (!s.push(k >> 2, k & 3))
+				return;
+		if (unit.length < splitDepth && !s.isComplete()) {
+			//Children go on the front, in order, so the first is searched next
+			ArrayDeque<int[]> children = new ArrayDeque<int[]>();
+			for (int k = 0; k < s.getPieceCount() * 4; k++) {
+				if (s.canPush(k >> 2, k & 3)) {
+					int[] child = Arrays.copyOf(unit, unit.length + 1);
+					child[unit.length] = k;
+					children.push(child);
+				}
+			}
+			synchronized (queue) {
+				for (int[] child : children)
+					queue.push(child);
+			}
+			return;
+		}
+		boolean found = s.solve();
+		nodes += s.getNodeCount();
+		if (found && !monitor.isStopped()) {
+			synchronized (out) {
+				out.writeByte(SolverCluster.SOLUTION);
+				out.writeLong(nodes);
+				nodes = 0;
+				Solution solution = s.toSolution();
+				int[] cells = new int[solution.getWidth() * solution.getHeight()];
+				for (int c = 0; c < cells.length; c++) {
+					int x = c % solution.getWidth();
+					int y = c / solution.getWidth();
+					int p = solution.getPiece(x, y);
+					cells[c] = p < 0 ? -1 : p * 4 + solution.getRotation(x, y) / 90;
+				}
+				SolverCluster.writePath(out, cells);
+				out.flush();
+			}
+			monitor.stop();
+		}
+	}
+
+	/**
+	 * Reads the coordinator's messages until it says to stop.
+	 */
+	private void listen() {
+		try {
+			while (true) {
+				int tag = in.readByte();
+				if (tag == SolverCluster.UNIT) {
+					int[] unit = SolverCluster.readPath(in);
+					synchronized (queue) {
+						queue.add(unit);
+						received++;
+						queue.notifyAll();
+					}
+				}
+				else if (tag == SolverCluster.STEAL)
+					give();
+				else
+					break;
+			}
+		} catch (IOException e) {
+			//The coordinator has gone; there is nobody left to work for
+		}
+		monitor.stop();
+		synchronized (queue) {
+			queue.notifyAll();
+		}
+	}
+
+	/**
+	 * Sends the coordinator the back half of the queue.
+	 */
+	private void give() throws IOException {
+		ArrayDeque<int[]> given = new ArrayDeque<int[]>();
+		synchronized (queue) {
+			for (int n = queue.size() / 2 + (queue.size() == 1 ? 1 : 0); n > 0; n--)
+				given.push(queue.pollLast());
+		}
+		synchronized (out) {
+			out.writeByte(SolverCluster.GIVE);
+			out.writeInt(given.size());
+			for (int[] unit : given)
+				SolverCluster.writePath(out, unit);
+			out.flush();
+		}
+	}
+
+	private void send(int tag) throws IOException {
+		synchronized (out) {
+			out.writeByte(tag);
+			if (tag == SolverCluster.IDLE) {
+				out.writeLong(nodes);
+				nodes = 0;
+			}
+			out.flush();
+		}
+	}
+
+	/**
+	 * Connects to the coordinator on the given port and works until stopped.
+	 */
+	public static void main(String[] args) throws Exception {
+		new ClusterWorker(Integer.parseInt(args[0])).run();
+		System.exit(0);
+	}
+}
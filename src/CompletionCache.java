@@ -0,0 +1,119 @@
+/**
+ * CompletionCache.java: Keeps track of a way to complete a partly filled
+ * 	board while the board changes a piece at a time, so that most changes
+ * 	need no search at all.
+ *
+ * The pieces on the board are fixed in a Solver that is kept from one
+ * 	update to the next, and only the cells that have changed are fixed or
+ * 	freed. Along with it is kept what the last search found: a completion,
+ * 	where a search that was stopped left off, or that the board cannot be
+ * 	completed. A completion stays good while pieces are only taken off, or
+ * 	put where it has them; a board that cannot be completed stays that way
+ * 	while pieces are only put on; and a stopped search carries on where it
+ * 	left off if the board has not changed.
+ *
+ * A CompletionCache is not safe to use from more than one thread at once.
+ *
+ */
+
+public class CompletionCache {
+
+	private final int width;
+	private final int height;
+	private final Solver solver;
+
+	//What the last search found about the board as it is now: a
+	//completion, where it was stopped, or that there is no completion
+	private Solution completion;
+	private Checkpoint checkpoint;
+	private boolean dead;
+	//Whether some piece on the board does not fit where it is
+	private boolean misfit;
+
+	/**
+	 * Constructor that takes the size of the board and every piece of the
+	 * 	puzzle.
+	 * @param width The width of the board
+	 * @param height The height of the board
+	 * @param pieces The pieces, which placements given to update() refer to
+	 */
+	public CompletionCache(int width, int height, PuzzlePiece[] pieces) {
+		this.width = width;
+		this.height = height;
+		solver = new Solver(width, height, pieces);
+		//The fixed cells may be anywhere, so fill whichever empty cell has
+		//the fewest pieces that fit
+		solver.setOrdering(Solver.MOST_CONSTRAINED);
+	}
+
+	/**
+	 * Brings the fixed cells into line with the board, and forgets whatever
+	 * 	the changes make out of date: taking a piece off can make a board
+	 * 	with no completion completable, and putting one on rules out any
+	 * 	completion that has a different piece there.
+	 * @param placed The pieces on the board, with piece indices referring
+	 * 	to the pieces the cache was made with
+	 */
+	public void update(Solution placed) {
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				if (solver.isFixed(x, y) && (solver.getPiece(x, y) != placed.getPiece(x, y)
+						|| solver.getRotation(x, y) != placed.getRotation(x, y))) {
+					solver.unfix(x, y);
+					checkpoint = null;
+					dead = false;
+				}
+			}
+		}
+		misfit = false;
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int p = placed.getPiece(x, y);
+				if (p < 0 || solver.isFixed(x, y))
+					continue;
+				checkpoint = null;
+				if (completion != null && (completion.getPiece(x, y) != p
+						|| completion.getRotation(x, y) != placed.getRotation(x, y)))
+					completion = null;
+				if (!solver.fix(x, y, p, placed.getRotation(x, y) / 90))
+					misfit = true;
+			}
+		}
+	}
+
+	/**
+	 * Finds a completion of the board, searching only if what is already
+	 * 	known does not say.
+	 * @param monitor The monitor for the search, or null
+	 * @return A solution that agrees with every piece on the board, or null
+	 * 	if there is none or the search was stopped first
+	 */
+	public Solution complete(SearchMonitor monitor) {
+		if (isKnown())
+			return completion;
+		solver.setMonitor(monitor);
+		boolean found = solver.solve(checkpoint);
+		checkpoint = null;
+		if (found)
+			completion = solver.toSolution();
+		else if (monitor != null && monitor.isStopped())
+			checkpoint = solver.toCheckpoint();
+		else
+			dead = true;
+		return completion;
+	}
+
+	/**
+	 * @return Whether complete() would answer without searching
+	 */
+	public boolean isKnown() {
+		return completion != null || isDead();
+	}
+
+	/**
+	 * @return Whether the board is known to have no completion
+	 */
+	public boolean isDead() {
+		return dead || misfit;
+	}
+}
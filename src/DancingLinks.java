@@ -0,0 +1,390 @@
+/**
+ * DancingLinks.java: Solves a Grid as an exact cover problem using Knuth's
+ * 	Algorithm X with dancing links.
+ *
+ * Every (cell, piece, rotation) is an option. Each option covers its cell
+ * 	and its piece, so every cell is filled exactly once and every piece is
+ * 	used exactly once. Adjacent edges are handled with Knuth's coloured
+ * 	secondary items: each inside edge of the board is an item, and an
+ * 	option gives it the colour of the side it puts there, seen from the
+ * 	west or north cell. Two options can only both be chosen if they agree
+ * 	on the colour, which is exactly when their sides are complementary.
+ * 	On a bordered board there are no options that put an EDGE side
+ * 	anywhere but facing the outside, or anything else there.
+ *
+ * The links are kept in int arrays, as in Knuth's description, so the
+ * 	search allocates nothing.
+ *
+ */
+
+import java.util.Arrays;
+
+public class DancingLinks {
+
+	private final int width;
+
+	//Item headers are nodes 1..items; primary items are linked from node 0
+	//through llink/rlink, secondary items from node items + 1
+	private final int[] llink;
+	private final int[] rlink;
+
+	//For an item header, top is the number of options in its list; for an
+	//option node it is the item, and for a spacer it is minus the option
+	private final int[] top;
+	private final int[] ulink;
+	private final int[] dlink;
+	private final int[] color;
+
+	//The cell, piece and rotation of each option
+	private final int[] optionCell;
+	private final int[] optionPiece;
+	private final int[] optionRotation;
+
+	//The option chosen at each level of the search
+	private final int[] chosen;
+
+	//The piece index and rotation index placed at each cell, -1 if empty
+	private final int[] cellPiece;
+	private final int[] cellRotation;
+
+	private long nodes;
+	private long reported;
+	private SearchMonitor monitor;
+
+	/**
+	 * Constructor that takes the dimensions of the board and the pieces
+	 * 	that may be placed on it. Null pieces are never placed. If there
+	 * 	are more pieces than cells, some pieces are left out.
+	 * @param width The width of the grid to be filled
+	 * @param height The height of the grid to be filled
+	 * @param pieces The bank of pieces to fill the grid with
+	 */
+	public DancingLinks(int width, int height, PuzzlePiece[] pieces) {
+		this.width = width;
+		int cells = width * height;
+		int pieceCount = 0;
+		for (PuzzlePiece p : pieces)
+			if (p != null)
+				pieceCount++;
+		boolean bordered = PuzzlePiece.isBordered(pieces);
+		//Pieces must be covered exactly once only if every one of them is needed
+		boolean piecesPrimary = pieceCount <= cells;
+		int horizontal = (width - 1) * height;
+		int vertical = width * (height - 1);
+
+		//Items: cells, then pieces (primary or secondary), then edges
+		int cellItem = 1;
+		int pieceItem = cellItem + cells;
+		int edgeItem = pieceItem + pieces.length;
+		int items = edgeItem + horizontal + vertical - 1;
+		int primary = piecesPrimary ? pieceItem + pieces.length - 1 : cells;
+
+		int options = cells * pieceCount * 4;
+		int size = items + 2 + options * 7;
+		top = new int[size];
+		ulink = new int[size];
+		dlink = new int[size];
+		color = new int[size];
+		llink = new int[items + 2];
+		rlink = new int[items + 2];
+		optionCell = new int[options + 1];
+		optionPiece = new int[options + 1];
+		optionRotation = new int[options + 1];
+		chosen = new int[cells];
+		cellPiece = new int[cells];
+		cellRotation = new int[cells];
+
+		//Link the headers: primary from 0, secondary from items + 1.
+		//Null pieces get no options and are left out of the item lists.
+		llink[0] = rlink[0] = 0;
+		llink[items + 1] = rlink[items + 1] = items + 1;
+		for (int i = 1; i <= items; i++) {
+			ulink[i] = dlink[i] = i;
+			if (i >= pieceItem && i < edgeItem && pieces[i - pieceItem] == null)
+				continue;
+			int head = i <= primary ? 0 : items + 1;
+			llink[i] = llink[head];
+			rlink[i] = head;
+			rlink[llink[head]] = i;
+			llink[head] = i;
+		}
+
+		int node = items + 1;
+		int spacer = node;
+		top[spacer] = 0;
+		int option = 0;
+		for (int c = 0; c < cells; c++) {
+			int x = c % width;
+			int y = c / width;
+			int border = bordered ? Solver.borderOf(x, y, width, height) : 0;
+			for (int p = 0; p < pieces.length; p++) {
+				if (pieces[p] == null)
+					continue;
+				for (int r = 0; r < 4; r++) {
+					int packed = Integer.rotateLeft(pieces[p].getPackedSides(), r * 8);
+					if (PuzzlePiece.edges(packed) != border)
+						continue;
+					option++;
+					optionCell[option] = c;
+					optionPiece[option] = p;
+					optionRotation[option] = r;
+					int first = node + 1;
+					node = append(node, cellItem + c, 0);
+					node = append(node, pieceItem + p, 0);
+					if (x < width - 1)
+						node = append(node, edgeItem + y * (width - 1) + x,
+								colour(PuzzlePiece.unpack(packed, Solver.EAST)));
+					if (x > 0)
+						node = append(node, edgeItem + y * (width - 1) + x - 1,
+								colour(-PuzzlePiece.unpack(packed, Solver.WEST)));
+					if (y < height - 1)
+						node = append(node, edgeItem + horizontal + y * width + x,
+								colour(PuzzlePiece.unpack(packed, Solver.SOUTH)));
+					if (y > 0)
+						node = append(node, edgeItem + horizontal + (y - 1) * width + x,
+								colour(-PuzzlePiece.unpack(packed, Solver.NORTH)));
+					//Close the option with a spacer
+					dlink[spacer] = node;
+					spacer = ++node;
+					top[spacer] = -option;
+					ulink[spacer] = first;
+				}
+			}
+		}
+		Arrays.fill(cellPiece, -1);
+	}
+
+	/**
+	 * Appends a node for an item to the option being built.
+	 * @return The index of the new node
+	 */
+	private int append(int node, int item, int c) {
+		node++;
+		top[node] = item;
+		color[node] = c;
+		top[item]++;
+		ulink[node] = ulink[item];
+		dlink[node] = item;
+		dlink[ulink[item]] = node;
+		ulink[item] = node;
+		return node;
+	}
+
+	/**
+	 * @return A colour, always positive, for a side value
+	 */
+	private static int colour(int side) {
+		return side + 257;
+	}
+
+	/**
+	 * Searches for an exact cover, always branching on the primary item
+	 * 	with the fewest options left.
+	 * @return Whether the board was filled. If it was, the placement
+	 * 	can be read with getPiece() and getRotation(). Also returns
+	 * 	false if the search was stopped.
+	 */
+	public boolean solve() {
+		nodes = 0;
+		reported = 0;
+		Arrays.fill(cellPiece, -1);
+		boolean found = search(0);
+		if (monitor != null)
+			monitor.report(nodes - reported, 0);
+		if (!found)
+			return false;
+		for (int level = 0; level < chosen.length; level++) {
+			int o = -top[spacerAfter(chosen[level])];
+			cellPiece[optionCell[o]] = optionPiece[o];
+			cellRotation[optionCell[o]] = optionRotation[o];
+		}
+		return true;
+	}
+
+	private boolean search(int level) {
+		if (rlink[0] == 0)
+			return true;
+		if (monitor != null) {
+			if (nodes - reported >= 4096) {
+				monitor.report(nodes - reported, level);
+				reported = nodes;
+			}
+			if (monitor.isStopped())
+				return false;
+		}
+		//Choose the primary item with the fewest options
+		int best = rlink[0];
+		for (int i = rlink[best]; i != 0 && top[best] > 0; i = rlink[i])
+			if (top[i] < top[best])
+				best = i;
+		if (top[best] == 0)
+			return false;
+		cover(best);
+		for (int x = dlink[best]; x != best; x = dlink[x]) {
+			nodes++;
+			chosen[level] = x;
+			for (int p = x + 1; p != x;) {
+				int j = top[p];
+				if (j <= 0)
+					p = ulink[p];
+				else {
+					commit(p, j);
+					p++;
+				}
+			}
+			boolean found = search(level + 1);
+			for (int p = x - 1; p != x;) {
+				int j = top[p];
+				if (j <= 0)
+					p = dlink[p];
+				else {
+					uncommit(p, j);
+					p--;
+				}
+			}
+			if (found) {
+				uncover(best);
+				return true;
+			}
+			if (monitor != null && monitor.isStopped())
+				break;
+		}
+		uncover(best);
+		return false;
+	}
+
+	/**
+	 * @return The spacer that closes the option containing a node
+	 */
+	private int spacerAfter(int x) {
+		while (top[x] > 0)
+			x++;
+		return x;
+	}
+
+	private void cover(int i) {
+		for (int p = dlink[i]; p != i; p = dlink[p])
+			hide(p);
+		rlink[llink[i]] = rlink[i];
+		llink[rlink[i]] = llink[i];
+	}
+
+	private void uncover(int i) {
+		llink[rlink[i]] = i;
+		rlink[llink[i]] = i;
+		for (int p = ulink[i]; p != i; p = ulink[p])
+			unhide(p);
+	}
+
+	private void hide(int p) {
+		for (int q = p + 1; q != p;) {
+			int x = top[q];
+			if (x <= 0)
+				q = ulink[q];
+			else {
+				if (color[q] >= 0) {
+					dlink[ulink[q]] = dlink[q];
+					ulink[dlink[q]] = ulink[q];
+					top[x]--;
+				}
+				q++;
+			}
+		}
+	}
+
+	private void unhide(int p) {
+		for (int q = p - 1; q != p;) {
+			int x = top[q];
+			if (x <= 0)
+				q = dlink[q];
+			else {
+				if (color[q] >= 0) {
+					dlink[ulink[q]] = q;
+					ulink[dlink[q]] = q;
+					top[x]++;
+				}
+				q--;
+			}
+		}
+	}
+
+	private void commit(int p, int j) {
+		if (color[p] == 0)
+			cover(j);
+		else if (color[p] > 0)
+			purify(p);
+	}
+
+	private void uncommit(int p, int j) {
+		if (color[p] == 0)
+			uncover(j);
+		else if (color[p] > 0)
+			unpurify(p);
+	}
+
+	/**
+	 * Hides every option that gives the item of node p a different colour,
+	 * 	and marks the ones that agree so they are not hidden twice.
+	 */
+	private void purify(int p) {
+		int c = color[p];
+		int i = top[p];
+		for (int q = dlink[i]; q != i; q = dlink[q]) {
+			if (color[q] == c)
+				color[q] = -1;
+			else
+				hide(q);
+		}
+	}
+
+	private void unpurify(int p) {
+		int c = color[p];
+		int i = top[p];
+		for (int q = ulink[i]; q != i; q = ulink[q]) {
+			if (color[q] < 0)
+				color[q] = c;
+			else
+				unhide(q);
+		}
+	}
+
+	/**
+	 * Sets the monitor that solve() reports to and polls for being stopped.
+	 * @param monitor The monitor, or null to never stop early
+	 */
+	public void setMonitor(SearchMonitor monitor) {
+		this.monitor = monitor;
+	}
+
+	/**
+	 * @return The index in the bank of the piece placed at a cell, -1 if empty
+	 */
+	public int getPiece(int x, int y) {
+		return cellPiece[y * width + x];
+	}
+
+	/**
+	 * @return The rotation, in degrees, of the piece placed at a cell
+	 */
+	public int getRotation(int x, int y) {
+		return cellRotation[y * width + x] * 90;
+	}
+
+	/**
+	 * @return An immutable copy of the placement found by solve()
+	 */
+	public Solution toSolution() {
+		int[] cells = new int[cellPiece.length];
+		for (int c = 0; c < cells.length; c++)
+			cells[c] = cellPiece[c] < 0 ? -1 : cellPiece[c] * 4 + cellRotation[c];
+		return new Solution(width, cells.length / width, cells);
+	}
+
+	/**
+	 * @return The number of options tried by the last call to solve()
+	 */
+	public long getNodeCount() {
+		return nodes;
+	}
+
+}
@@ -0,0 +1,151 @@
+/**
+ * DeadEndWatcher.java: Checks on a thread of its own whether the board can
+ * 	still be completed, each time it changes.
+ *
+ * Every board handed to submit() replaces any board still waiting to be
+ * 	checked, and stops the check that is running, so only the newest board
+ * 	is ever finished. The checks go through a CompletionCache, so a move
+ * 	that agrees with the completion found last time, or a piece put on a
+ * 	board that was already a dead end, is answered without searching; the
+ * 	rest search only the empty cells. The answer is kept in a volatile
+ * 	status that can be read at any time, and passed to the listener.
+ *
+ */
+
+public class DeadEndWatcher {
+
+	//Statuses
+	public static final int UNKNOWN = 0;
+	public static final int CHECKING = 1;
+	public static final int COMPLETABLE = 2;
+	public static final int DEAD_END = 3;
+
+	private final CompletionCache cache;
+	private final SolvabilityListener listener;
+	private final Thread thread;
+
+	//The newest board, null once the thread has taken it, and how many
+	//boards have been submitted, so answers about older ones are dropped
+	private Solution pending;
+	private long generation;
+	//Stops the check that is running, if any
+	private SearchMonitor monitor;
+	private boolean shutdown;
+
+	private volatile int status = UNKNOWN;
+	//How many boards have been taken up, and how many of them needed a search
+	private volatile long checks;
+	private volatile long searches;
+
+	/**
+	 * Constructor that takes the size of the board, every piece of the
+	 * 	puzzle, and who to tell about the answers. Starts the thread.
+	 * @param width The width of the board
+	 * @param height The height of the board
+	 * @param pieces The pieces, which the boards given to submit() refer to
+	 * @param listener Told each time the status changes, or null
+	 */
+	public DeadEndWatcher(int width, int height, PuzzlePiece[] pieces, SolvabilityListener listener) {
+		cache = new CompletionCache(width, height, pieces);
+		this.listener = listener;
+		thread = new Thread(new Runnable() {
+			public void run() {
+				watch();
+			}
+		}, "Dead-end watcher");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Hands over the board as it is after a move. Returns at once.
+	 * @param placed The pieces on the board, with piece indices referring
+	 * 	to the pieces the watcher was made with
+	 */
+	public synchronized void submit(Solution placed) {
+		pending = placed;
+		generation++;
+		if (monitor != null)
+			monitor.stop();
+		notifyAll();
+	}
+
+	private void watch() {
+		while (true) {
+			Solution placed;
+			long board;
+			SearchMonitor m;
+			synchronized (this) {
+				while (pending == null && !shutdown) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+				if (shutdown)
+					return;
+				placed = pending;
+				pending = null;
+				board = generation;
+				monitor = m = new SearchMonitor();
+			}
+			cache.update(placed);
+			checks++;
+			if (!cache.isKnown()) {
+				searches++;
+				publish(CHECKING, board);
+			}
+			Solution s = cache.complete(m);
+			if (!m.isStopped())
+				publish(s != null ? COMPLETABLE : DEAD_END, board);
+		}
+	}
+
+	/**
+	 * Sets the status, unless a newer board has come in, and tells the
+	 * 	listener if it changed.
+	 */
+	private void publish(int s, long board) {
+		synchronized (this) {
+			if (board != generation || s == status)
+				return;
+			status = s;
+		}
+		if (listener != null)
+			listener.solvabilityChanged(s);
+	}
+
+	/**
+	 * @return UNKNOWN before the first board has been checked, CHECKING
+	 * 	while a search is running, and then COMPLETABLE or DEAD_END
+	 */
+	public int getStatus() {
+		return status;
+	}
+
+	/**
+	 * @return How many boards the thread has taken up; a board replaced
+	 * 	before the thread got to it is not counted
+	 */
+	public long getCheckCount() {
+		return checks;
+	}
+
+	/**
+	 * @return How many of the boards checked needed a search
+	 */
+	public long getSearchCount() {
+		return searches;
+	}
+
+	/**
+	 * Stops the check that is running and the thread.
+	 */
+	public synchronized void shutdown() {
+		shutdown = true;
+		if (monitor != null)
+			monitor.stop();
+		notifyAll();
+	}
+}
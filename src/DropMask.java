@@ -0,0 +1,104 @@
+/**
+ * DropMask.java: The cells of a Grid where a held piece could be dropped,
+ * 	in one rotation or another, as Player.canPlace() would judge it.
+ *
+ * The whole mask is worked out once, when the piece is picked up. After
+ * 	that, a piece placed on or taken off a cell can only change the answer
+ * 	for that cell and the four cells around it, so only those five are
+ * 	worked out again, and reading the mask never checks anything.
+ *
+ */
+
+public class DropMask {
+
+	private final Grid grid;
+	private final PuzzlePiece piece;
+	private final boolean bordered;
+
+	//legal[y * width + x] is whether the piece can be dropped at (x, y),
+	//and count how many cells are legal
+	private final boolean[] legal;
+	private int count;
+
+	/**
+	 * Constructor used by Player.startDrag(). Works out every cell.
+	 * @param grid The grid the piece is being dragged over
+	 * @param piece The held piece
+	 * @param bordered Whether the outside of the grid must be lined with EDGE sides
+	 */
+	DropMask(Grid grid, PuzzlePiece piece, boolean bordered) {
+		this.grid = grid;
+		this.piece = piece;
+		this.bordered = bordered;
+		legal = new boolean[grid.getWidth() * grid.getHeight()];
+		for (int y = 0; y < grid.getHeight(); y++)
+			for (int x = 0; x < grid.getWidth(); x++)
+				update(x, y);
+	}
+
+	/**
+	 * Works out again the cells whose answer a change at a cell can affect:
+	 * 	the cell and its neighbours.
+	 * @param x The x-coordinate of the cell that was placed on or emptied
+	 * @param y The y-coordinate of the cell that was placed on or emptied
+	 */
+	void cellChanged(int x, int y) {
+		update(x, y);
+		update(x, y - 1);
+		update(x + 1, y);
+		update(x, y + 1);
+		update(x - 1, y);
+	}
+
+	private void update(int x, int y) {
+		if (!grid.isValid(x, y))
+			return;
+		int c = y * grid.getWidth() + x;
+		boolean now = !grid.isOccupied(x, y) && fits(x, y);
+		if (now != legal[c])
+			count += now ? 1 : -1;
+		legal[c] = now;
+	}
+
+	/**
+	 * @return Whether the piece, in some rotation, has its EDGE sides facing
+	 * 	exactly the outside of the grid and matches every occupied neighbour
+	 */
+	private boolean fits(int x, int y) {
+		int border = bordered ? Solver.borderOf(x, y, grid.getWidth(), grid.getHeight()) : 0;
+		int[][] neighbours = { { x, y - 1 }, { x + 1, y }, { x, y + 1 }, { x - 1, y } };
+		for (int r = 0; r < 4; r++) {
+			int sides = Integer.rotateLeft(piece.getPackedSides(), r * 8);
+			boolean fits = PuzzlePiece.edges(sides) == border;
+			for (int d = 0; d < 4 && fits; d++) {
+				PuzzlePiece n = grid.getCell(neighbours[d][0], neighbours[d][1]);
+				fits = n == null || n.getSide((d + 2) % 4 * 90) == -PuzzlePiece.unpack(sides, d);
+			}
+			if (fits)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return Whether the held piece can be dropped at a cell in some
+	 * 	rotation; false for cells off the grid
+	 */
+	public boolean isLegal(int x, int y) {
+		return grid.isValid(x, y) && legal[y * grid.getWidth() + x];
+	}
+
+	/**
+	 * @return The number of cells the held piece can be dropped at
+	 */
+	public int getLegalCount() {
+		return count;
+	}
+
+	/**
+	 * @return The held piece
+	 */
+	public PuzzlePiece getPiece() {
+		return piece;
+	}
+}
@@ -0,0 +1,120 @@
+/**
+ * EdgeIndex.java: A lookup table, built once from a bank of pieces, that
+ * 	answers "which pieces fit here?" without rotating anything.
+ *
+ * A constraint is a set of directions (a mask with bit d set for direction
+ * 	index d, north being 0 and going clockwise) together with the side each
+ * 	of those directions must have, packed the way PuzzlePiece packs sides.
+ * 	Every piece, in every rotation, is filed under all sixteen masks, so any
+ * 	combination of known neighbours is answered by a single hash probe that
+ * 	returns exactly the fitting (piece, rotation) pairs.
+ *
+ * A piece with EDGE sides is only filed under the masks that include every
+ * 	one of those directions. On a bordered board, the directions that face
+ * 	the outside are given in the mask with a required side of EDGE, so a
+ * 	lookup returns only pieces whose EDGE sides face exactly those
+ * 	directions, and never one that would turn an EDGE towards another cell.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+public class EdgeIndex {
+
+	//Returned when nothing fits
+	private static final int[] NONE = new int[0];
+
+	//Open-addressed table: keys[i] is (mask << 32 | masked sides), or -1 if empty
+	private final long[] keys;
+	private final int[][] lists;
+
+	/**
+	 * Constructor that indexes every non-null piece of a bank.
+	 * @param pieces The bank of pieces to index
+	 */
+	public EdgeIndex(PuzzlePiece[] pieces) {
+		Map<Long, ArrayList<Integer>> build = new HashMap<Long, ArrayList<Integer>>();
+		for (int p = 0; p < pieces.length; p++) {
+			if (pieces[p] == null)
+				continue;
+			for (int r = 0; r < 4; r++) {
+				int packed = Integer.rotateLeft(pieces[p].getPackedSides(), r * 8);
+				int edges = PuzzlePiece.edges(packed);
+				for (int mask = 0; mask < 16; mask++) {
+					if ((mask & edges) != edges)
+						continue;
+					Long key = key(mask, packed);
+					ArrayList<Integer> list = build.get(key);
+					if (list == null)
+						build.put(key, list = new ArrayList<Integer>());
+					list.add(p * 4 + r);
+				}
+			}
+		}
+		int capacity = Integer.highestOneBit(Math.max(1, build.size()) * 2) * 2;
+		keys = new long[capacity];
+		lists = new int[capacity][];
+		Arrays.fill(keys, -1);
+		for (Map.Entry<Long, ArrayList<Integer>> e : build.entrySet()) {
+			int slot = slot(e.getKey());
+			while (keys[slot] != -1)
+				slot = (slot + 1) & (capacity - 1);
+			keys[slot] = e.getKey();
+			ArrayList<Integer> list = e.getValue();
+			lists[slot] = new int[list.size()];
+			for (int i = 0; i < list.size(); i++)
+				lists[slot][i] = list.get(i);
+		}
+	}
+
+	/**
+	 * Returns every (piece, rotation) pair whose sides match a constraint.
+	 * 	The returned array is shared and must not be modified.
+	 * @param mask The directions that are constrained, bit d for direction index d
+	 * @param packed The required sides, packed; sides outside the mask are ignored.
+	 * 	A required side of EDGE means the direction faces the outside of the board.
+	 * @return The pairs, each encoded as piece * 4 + quarter turns clockwise
+	 */
+	public int[] get(int mask, int packed) {
+		long key = key(mask, packed);
+		int slot = slot(key);
+		while (keys[slot] != -1) {
+			if (keys[slot] == key)
+				return lists[slot];
+			slot = (slot + 1) & (keys.length - 1);
+		}
+		return NONE;
+	}
+
+	/**
+	 * Returns every (piece, rotation) pair with the given sides, where a side
+	 * 	of null means that direction is not constrained.
+	 * @return The pairs, each encoded as piece * 4 + quarter turns clockwise
+	 */
+	public int[] get(Integer north, Integer east, Integer south, Integer west) {
+		int mask = (north != null ? 1 : 0) | (east != null ? 2 : 0)
+				| (south != null ? 4 : 0) | (west != null ? 8 : 0);
+		return get(mask, PuzzlePiece.pack(north != null ? north : 0, east != null ? east : 0,
+				south != null ? south : 0, west != null ? west : 0));
+	}
+
+	/**
+	 * @return The byte mask that keeps only the sides of the directions in mask
+	 */
+	public static int bytes(int mask) {
+		return ((mask & 1) != 0 ? 0xFF : 0) | ((mask & 2) != 0 ? 0xFF00 : 0)
+				| ((mask & 4) != 0 ? 0xFF0000 : 0) | ((mask & 8) != 0 ? 0xFF000000 : 0);
+	}
+
+	private static long key(int mask, int packed) {
+		return (long) mask << 32 | (packed & bytes(mask)) & 0xFFFFFFFFL;
+	}
+
+	private int slot(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h >>> 40) & (keys.length - 1);
+	}
+}
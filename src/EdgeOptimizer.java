@@ -0,0 +1,463 @@
+/**
+ * EdgeOptimizer.java: Looks for the arrangement of a bank of pieces that
+ * 	matches as many pairs of adjacent sides as it can, for boards that
+ * 	have no solution or are too big to solve exactly.
+ *
+ * It uses parallel tempering: several copies of the board, called
+ * 	replicas, are annealed at once, each at its own temperature, and each
+ * 	replica takes a round of random moves on a thread of its own. A move
+ * 	turns one piece, or swaps two and turns each to the rotation that
+ * 	suits its new cell best, and is kept if it matches at least as
+ * 	many sides as before, or otherwise with a chance that shrinks with the
+ * 	sides it loses and grows with the temperature. Only the sides of the
+ * 	one or two cells a move touches change, so a move is scored in
+ * 	constant time. Between rounds, replicas at neighbouring temperatures
+ * 	may trade places, which lets a hot replica that has climbed out of a
+ * 	dead end cool down and lets a cold one that is stuck warm up. Each
+ * 	replica reports to the monitor every few thousand moves and stops as
+ * 	soon as it is stopped, so a deadline is kept even when a round is long.
+ *
+ * Two sides match if one is the complement of the other and neither is
+ * 	EDGE. On a bordered board, a side facing the outside matches if it
+ * 	is EDGE. If the bank has more pieces than the board has cells, the
+ * 	spare pieces wait off the board, where they may be swapped in.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+public class EdgeOptimizer {
+
+	//The temperatures of the coldest and the hottest replicas
+	private static final double MIN_TEMPERATURE = 0.15;
+	private static final double MAX_TEMPERATURE = 2.5;
+
+	//The number of moves each replica makes per round, per cell of the board
+	private static final int MOVES_PER_CELL = 64;
+	//The number of moves a replica makes between reports to the monitor
+	private static final int REPORT_INTERVAL = 4096;
+
+	private final int width;
+	private final int height;
+	private final PuzzlePiece[] pieces;
+	private final boolean bordered;
+
+	//sides[piece * 4 + rotation] is the piece's packed sides in that rotation
+	private final int[] sides;
+	//The bank indices of the pieces that are not null
+	private final int[] present;
+	//The number of slots: the cells of the board, then places off the board
+	private final int slots;
+	private final int maxScore;
+
+	private final int threads;
+	private final int replicaCount;
+	private long seed;
+
+	//The best arrangement found by the last call to optimize(), as
+	//piece * 4 + rotation for each cell, and the sides it matches
+	private int[] best;
+	private int bestScore = -1;
+	private long moves;
+
+	/**
+	 * Constructor that takes the board and the bank, and uses a thread and
+	 * 	two replicas for each processor.
+	 * @param width The width of the board
+	 * @param height The height of the board
+	 * @param pieces The bank of pieces; null pieces are left out
+	 */
+	public EdgeOptimizer(int width, int height, PuzzlePiece[] pieces) {
+		this(width, height, pieces, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Constructor that takes the board, the bank and the number of threads.
+	 * @param width The width of the board
+	 * @param height The height of the board
+	 * @param pieces The bank of pieces; null pieces are left out
+	 * @param threads The number of threads; there are two replicas for each
+	 */
+	public EdgeOptimizer(int width, int height, PuzzlePiece[] pieces, int threads) {
+		this.width = width;
+		this.height = height;
+		this.pieces = pieces;
+		this.threads = Math.max(1, threads);
+		replicaCount = Math.max(4, this.threads * 2);
+		bordered = PuzzlePiece.isBordered(pieces);
+		sides = new int[pieces.length * 4];
+		int n = 0;
+		for (PuzzlePiece p : pieces)
+			if (p != null)
+				n++;
+		present = new int[n];
+		n = 0;
+		for (int p = 0; p < pieces.length; p++) {
+			if (pieces[p] == null)
+				continue;
+			present[n++] = p;
+			for (int r = 0; r < 4; r++)
+				sides[p * 4 + r] = Integer.rotateLeft(pieces[p].getPackedSides(), r * 8);
+		}
+		slots = Math.max(width * height, n);
+		maxScore = (width - 1) * height + width * (height - 1) + (bordered ? 2 * (width + height) : 0);
+	}
+
+	/**
+	 * Anneals until the time is up or every side matches.
+	 * @param timeoutMillis How long to search for
+	 * @return A new grid holding turned copies of the pieces, in the best
+	 * 	arrangement found; the pieces of the bank are not changed
+	 */
+	public Grid optimize(long timeoutMillis) {
+		return optimize(new SearchMonitor(timeoutMillis));
+	}
+
+	/**
+	 * Anneals until the monitor is stopped or every side matches. The
+	 * 	monitor is told about the moves made and the best score so far.
+	 * @param monitor The monitor; give it a deadline, or stop it, to end
+	 * 	the search before every side matches
+	 * @return A new grid holding turned copies of the pieces, in the best
+	 * 	arrangement found; the pieces of the bank are not changed
+	 */
+	public Grid optimize(final SearchMonitor monitor) {
+		Random random = new Random(seed);
+		Replica[] replicas = new Replica[replicaCount];
+		for (int i = 0; i < replicaCount; i++)
+			replicas[i] = new Replica(random.nextLong());
+		//The replica at each temperature, from coldest to hottest
+		double[] temperatures = new double[replicaCount];
+		for (int i = 0; i < replicaCount; i++) {
+			temperatures[i] = MIN_TEMPERATURE * Math.pow(MAX_TEMPERATURE / MIN_TEMPERATURE, i / (replicaCount - 1.0));
+			replicas[i].setTemperature(temperatures[i]);
+		}
+		ExecutorService pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "Edge optimizer");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		ArrayList<Callable<Long>> round = new ArrayList<Callable<Long>>();
+		for (final Replica r : replicas) {
+			round.add(new Callable<Long>() {
+				public Long call() {
+					return r.anneal((long) MOVES_PER_CELL * slots, monitor);
+				}
+			});
+		}
+		best = null;
+		bestScore = -1;
+		moves = 0;
+		try {
+			while (true) {
+				for (Future<Long> made : pool.invokeAll(round))
+					moves += made.get();
+				for (Replica r : replicas) {
+					if (r.bestScore > bestScore) {
+						bestScore = r.bestScore;
+						best = r.best.clone();
+					}
+				}
+				if (bestScore == maxScore || monitor.isStopped())
+					break;
+				exchange(replicas, temperatures, random);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		} finally {
+			pool.shutdown();
+		}
+		return toGrid();
+	}
+
+	/**
+	 * Offers each pair of replicas at neighbouring temperatures the chance
+	 * 	to trade, with the probability that keeps every replica sampling
+	 * 	its own temperature fairly.
+	 */
+	private void exchange(Replica[] replicas, double[] temperatures, Random random) {
+		for (int i = 0; i + 1 < replicas.length; i++) {
+			Replica cold = replicas[i];
+			Replica hot = replicas[i + 1];
+			double p = Math.exp((hot.score - cold.score) * (1 / temperatures[i] - 1 / temperatures[i + 1]));
+			if (p >= 1 || random.nextDouble() < p) {
+				replicas[i] = hot;
+				replicas[i + 1] = cold;
+				hot.setTemperature(temperatures[i]);
+				cold.setTemperature(temperatures[i + 1]);
+			}
+		}
+	}
+
+	/**
+	 * @return A grid holding turned copies of the pieces in the best arrangement
+	 */
+	private Grid toGrid() {
+		Grid g = new Grid(width, height);
+		for (int c = 0; c < width * height; c++) {
+			if (best[c] < 0)
+				continue;
+			int packed = pieces[best[c] >> 2].getPackedSides();
+			PuzzlePiece copy = new PuzzlePiece(PuzzlePiece.unpack(packed, Solver.NORTH),
+					PuzzlePiece.unpack(packed, Solver.EAST), PuzzlePiece.unpack(packed, Solver.SOUTH),
+					PuzzlePiece.unpack(packed, Solver.WEST));
+			for (int r = 0; r < (best[c] & 3); r++)
+				copy.rotate();
+			g.setCell(c % width, c / width, copy);
+		}
+		return g;
+	}
+
+	/**
+	 * @return The best arrangement found by the last call to optimize(),
+	 * 	with piece indices referring to the bank, or null before the first
+	 */
+	public Solution getBestSolution() {
+		return best == null ? null : new Solution(width, height, Arrays.copyOf(best, width * height));
+	}
+
+	/**
+	 * @return The number of matching sides in the best arrangement found,
+	 * 	-1 before the first call to optimize()
+	 */
+	public int getBestScore() {
+		return bestScore;
+	}
+
+	/**
+	 * @return The number of matching sides if every side matched: every
+	 * 	pair of neighbouring cells, and the outside of a bordered board
+	 */
+	public int getMaxScore() {
+		return maxScore;
+	}
+
+	/**
+	 * @return The number of moves tried by the last call to optimize()
+	 */
+	public long getMoveCount() {
+		return moves;
+	}
+
+	/**
+	 * Sets the seed the replicas' random moves come from, so that a
+	 * 	search on one thread can be repeated.
+	 * @param seed The seed
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * One copy of the board, annealed at one temperature by one thread at a time.
+	 */
+	private class Replica {
+
+		//piece * 4 + rotation in each slot, -1 if empty; the first
+		//width * height slots are the cells of the board
+		private final int[] slot = new int[slots];
+		private int score;
+		private final Random random;
+
+		//accept[k] is the chance of keeping a move that loses k sides
+		private final double[] accept = new double[9];
+
+		private final int[] best;
+		private int bestScore;
+
+		public Replica(long seed) {
+			random = new Random(seed);
+			Arrays.fill(slot, -1);
+			//Deal the pieces out in a random order and rotation
+			int[] order = present.clone();
+			for (int i = order.length - 1; i > 0; i--) {
+				int j = random.nextInt(i + 1);
+				int t = order[i];
+				order[i] = order[j];
+				order[j] = t;
+			}
+			for (int i = 0; i < order.length; i++)
+				slot[i] = order[i] * 4 + random.nextInt(4);
+			for (int c = 0; c < width * height; c++)
+				score += east(c) + south(c) + outside(c);
+			best = slot.clone();
+			bestScore = score;
+		}
+
+		public void setTemperature(double t) {
+			for (int k = 0; k < accept.length; k++)
+				accept[k] = Math.exp(-k / t);
+		}
+
+		/**
+		 * Makes a number of random moves at the replica's temperature,
+		 * 	reporting to the monitor every REPORT_INTERVAL moves, and stops
+		 * 	early if every side matches or the monitor is stopped.
+		 * @return The number of moves made
+		 */
+		public long anneal(long count, SearchMonitor monitor) {
+			int cells = width * height;
+			long m = 0;
+			long reported = 0;
+			while (m < count && bestScore < maxScore) {
+				if (m - reported == REPORT_INTERVAL) {
+					monitor.report(m - reported, bestScore);
+					reported = m;
+					if (monitor.isStopped())
+						break;
+				}
+				m++;
+				int a = random.nextInt(cells);
+				if (random.nextBoolean()) {
+					//Turn the piece at a
+					if (slot[a] < 0)
+						continue;
+					int before = local(a);
+					int old = slot[a];
+					slot[a] = old & ~3 | (old + 1 + random.nextInt(3) & 3);
+					int delta = local(a) - before;
+					if (keep(delta))
+						score += delta;
+					else
+						slot[a] = old;
+				}
+				else {
+					//Swap the pieces at a and b, which may be off the board
+					int b = random.nextInt(slots);
+					if (a == b || slot[a] == slot[b])
+						continue;
+					int before = pair(a, b);
+					int oldA = slot[a];
+					int oldB = slot[b];
+					swap(a, b);
+					turnBest(a);
+					if (b < cells)
+						turnBest(b);
+					int delta = pair(a, b) - before;
+					if (keep(delta))
+						score += delta;
+					else {
+						slot[a] = oldA;
+						slot[b] = oldB;
+					}
+				}
+				if (score > bestScore) {
+					bestScore = score;
+					System.arraycopy(slot, 0, best, 0, slots);
+				}
+			}
+			monitor.report(m - reported, bestScore);
+			return m;
+		}
+
+		/**
+		 * Turns the piece at a cell to the rotation that matches the most
+		 * 	sides there, keeping its rotation if none does better.
+		 */
+		private void turnBest(int c) {
+			if (slot[c] < 0)
+				return;
+			int start = slot[c];
+			int bestTurn = start;
+			int most = local(c);
+			for (int r = 1; r < 4; r++) {
+				slot[c] = start & ~3 | (start + r & 3);
+				int matched = local(c);
+				if (matched > most) {
+					most = matched;
+					bestTurn = slot[c];
+				}
+			}
+			slot[c] = bestTurn;
+		}
+
+		private boolean keep(int delta) {
+			return delta >= 0 || random.nextDouble() < accept[Math.min(-delta, accept.length - 1)];
+		}
+
+		private void swap(int a, int b) {
+			int t = slot[a];
+			slot[a] = slot[b];
+			slot[b] = t;
+		}
+
+		/**
+		 * @return The matching sides that touch cell a or slot b, each counted once
+		 */
+		private int pair(int a, int b) {
+			int cells = width * height;
+			if (b >= cells)
+				return local(a);
+			int sum = local(a) + local(b);
+			//A side the two cells share has been counted twice
+			if (b == a + 1 && a % width != width - 1)
+				sum -= east(a);
+			else if (a == b + 1 && b % width != width - 1)
+				sum -= east(b);
+			else if (b == a + width)
+				sum -= south(a);
+			else if (a == b + width)
+				sum -= south(b);
+			return sum;
+		}
+
+		/**
+		 * @return The matching sides of a cell
+		 */
+		private int local(int c) {
+			int sum = outside(c) + east(c) + south(c);
+			if (c % width > 0)
+				sum += east(c - 1);
+			if (c >= width)
+				sum += south(c - width);
+			return sum;
+		}
+
+		/**
+		 * @return 1 if the cell and its east neighbour match, otherwise 0
+		 */
+		private int east(int c) {
+			if (c % width == width - 1 || slot[c] < 0 || slot[c + 1] < 0)
+				return 0;
+			return matches(PuzzlePiece.unpack(sides[slot[c]], Solver.EAST),
+					PuzzlePiece.unpack(sides[slot[c + 1]], Solver.WEST));
+		}
+
+		/**
+		 * @return 1 if the cell and its south neighbour match, otherwise 0
+		 */
+		private int south(int c) {
+			if (c + width >= width * height || slot[c] < 0 || slot[c + width] < 0)
+				return 0;
+			return matches(PuzzlePiece.unpack(sides[slot[c]], Solver.SOUTH),
+					PuzzlePiece.unpack(sides[slot[c + width]], Solver.NORTH));
+		}
+
+		/**
+		 * @return The sides of the cell that face the outside of a bordered
+		 * 	board and are EDGE
+		 */
+		private int outside(int c) {
+			if (!bordered || slot[c] < 0)
+				return 0;
+			int border = Solver.borderOf(c % width, c / width, width, height);
+			return Integer.bitCount(border & PuzzlePiece.edges(sides[slot[c]]));
+		}
+	}
+
+	private static int matches(int side, int other) {
+		return side != PuzzlePiece.EDGE && side == -other ? 1 : 0;
+	}
+}
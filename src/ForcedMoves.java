@@ -0,0 +1,345 @@
+/**
+ * ForcedMoves.java: Keeps count, for every empty cell of a Grid, of the
+ * 	(piece, rotation) pairs from the bank that fit there, so that the cells
+ * 	with exactly one, the forced moves, can be found without looking at
+ * 	the whole board.
+ *
+ * The pairs that fit a cell, bank or no bank, come from an EdgeIndex keyed
+ * 	on the cell's neighbours and border, and only change when the cell or a
+ * 	neighbour does. Each piece also keeps a list of the cells it fits, so a
+ * 	piece leaving or coming back to the bank only touches those cells.
+ * 	Whenever a count drops to one the cell is queued, and nextForced()
+ * 	checks the queued cells again before handing one out.
+ *
+ * A cell with no neighbours yet is fitted by every piece whose EDGE sides
+ * 	match its border, so those cells are not listed against each piece;
+ * 	they share one count for each border instead. Only cells next to a
+ * 	piece are listed, so the lists hold what actually fits there and an
+ * 	empty board costs nothing per piece.
+ *
+ */
+
+import java.util.Arrays;
+
+public class ForcedMoves {
+
+	//Returned by nextForced() when no move is forced
+	public static final int NONE = -1;
+
+	private final Grid grid;
+	private final EdgeIndex index;
+	private final PuzzlePiece[] pieces;
+	private final boolean[] inBank;
+	private final int width;
+	private final int cells;
+	//The directions of each cell that face the outside, if bordered
+	private final int[] border;
+
+	//fits[cell] is every piece * 4 + rotation that fits the cell, in the
+	//bank or not, and count[cell] how many of them are in the bank; for a
+	//cell with no neighbours the count is alone[border[cell]] instead
+	private final int[][] fits;
+	private final int[] count;
+	//Whether a cell is empty with no neighbours, and for each border, how
+	//many rotations in the bank have exactly those EDGE sides, and which
+	//cells without neighbours have that border: in the first lonely[border]
+	//entries of loners[border], cell lonerSlot[cell]
+	private final boolean[] isAlone;
+	private final int[] alone = new int[16];
+	private final int[][] loners = new int[16][];
+	private final int[] lonely = new int[16];
+	private final int[] lonerSlot;
+	//cellsOf[piece] lists, in its first size[piece] entries, the cells the
+	//piece fits, each as cell * 8 + how many of its rotations fit there
+	private final int[][] cellsOf;
+	private final int[] size;
+	//Open-addressed table: linkKeys[i] is piece * cells + cell, or -1 if
+	//empty, and linkSlots[i] where the cell is in cellsOf[piece]. Only the
+	//pairs that fit take room, so nothing grows with pieces * cells
+	private long[] linkKeys;
+	private int[] linkSlots;
+	private int links;
+	//Cells whose count has dropped to one since they were last handed out
+	private int[] queue;
+	private int queued;
+	private final boolean[] isQueued;
+
+	/**
+	 * Constructor used by Player.setAssist(). Counts every cell.
+	 * @param grid The grid being played on
+	 * @param index An EdgeIndex of every piece of the puzzle
+	 * @param pieces Every piece of the puzzle, in the order of the index
+	 * @param inBank Whether each piece is in the bank, kept up to date by the
+	 * 	Player, which calls bankChanged() after each change
+	 * @param bordered Whether the outside of the grid must be lined with EDGE sides
+	 */
+	ForcedMoves(Grid grid, EdgeIndex index, PuzzlePiece[] pieces, boolean[] inBank, boolean bordered) {
+		this.grid = grid;
+		this.index = index;
+		this.pieces = pieces;
+		this.inBank = inBank;
+		width = grid.getWidth();
+		cells = width * grid.getHeight();
+		border = new int[cells];
+		if (bordered)
+			for (int c = 0; c < cells; c++)
+				border[c] = Solver.borderOf(c % width, c / width, width, grid.getHeight());
+		fits = new int[cells][];
+		count = new int[cells];
+		isAlone = new boolean[cells];
+		lonerSlot = new int[cells];
+		for (int p = 0; p < pieces.length; p++)
+			if (pieces[p] != null && inBank[p])
+				for (int r = 0; r < 4; r++)
+					alone[edges(p, r)]++;
+		cellsOf = new int[inBank.length][];
+		size = new int[inBank.length];
+		linkKeys = new long[16];
+		linkSlots = new int[16];
+		Arrays.fill(linkKeys, -1);
+		queue = new int[cells];
+		isQueued = new boolean[cells];
+		for (int c = 0; c < cells; c++)
+			update(c % width, c / width);
+	}
+
+	/**
+	 * Counts again the cells a change at a cell can affect: the cell and
+	 * 	its neighbours.
+	 * @param x The x-coordinate of the cell that was placed on or emptied
+	 * @param y The y-coordinate of the cell that was placed on or emptied
+	 */
+	void cellChanged(int x, int y) {
+		update(x, y);
+		update(x, y - 1);
+		update(x + 1, y);
+		update(x, y + 1);
+		update(x - 1, y);
+	}
+
+	/**
+	 * Adds or takes away a piece's rotations from the count of every cell
+	 * 	it fits.
+	 * @param piece The index of the piece that went into or out of the bank
+	 * @param in Whether it is in the bank now
+	 */
+	void bankChanged(int piece, boolean in) {
+		for (int i = 0; i < size[piece]; i++) {
+			int c = cellsOf[piece][i] >> 3;
+			int r = cellsOf[piece][i] & 7;
+			count[c] += in ? r : -r;
+			if (count[c] == 1)
+				enqueue(c);
+		}
+		int touched = 0;
+		for (int r = 0; r < 4; r++) {
+			int b = edges(piece, r);
+			alone[b] += in ? 1 : -1;
+			touched |= 1 << b;
+		}
+		//Every cell with no neighbours and one of those borders is forced now
+		for (int b = 0; b < 16; b++)
+			if ((touched >> b & 1) != 0 && alone[b] == 1)
+				for (int i = 0; i < lonely[b]; i++)
+					enqueue(loners[b][i]);
+	}
+
+	/**
+	 * @return The directions in which a piece shows an EDGE with a rotation
+	 */
+	private int edges(int piece, int r) {
+		return PuzzlePiece.edges(Integer.rotateLeft(pieces[piece].getPackedSides(), r * 8));
+	}
+
+	private void update(int x, int y) {
+		if (!grid.isValid(x, y))
+			return;
+		int c = y * width + x;
+		if (isAlone[c])
+			unlone(c);
+		else if (fits[c] != null)
+			for (int k : fits[c])
+				unlink(k >> 2, c);
+		int[] now = null;
+		int mask = border[c];
+		if (!grid.isOccupied(x, y)) {
+			int packed = 0;
+			int[][] neighbours = { { x, y - 1 }, { x + 1, y }, { x, y + 1 }, { x - 1, y } };
+			for (int d = 0; d < 4; d++) {
+				PuzzlePiece n = grid.getCell(neighbours[d][0], neighbours[d][1]);
+				if (n != null) {
+					mask |= 1 << d;
+					packed |= (-n.getSide((d + 2) % 4 * 90) & 0xFF) << d * 8;
+				}
+			}
+			now = index.get(mask, packed);
+		}
+		fits[c] = now;
+		count[c] = 0;
+		if (now == null)
+			return;
+		if (mask == border[c]) {
+			lone(c);
+			if (alone[mask] == 1)
+				enqueue(c);
+			return;
+		}
+		for (int k : now) {
+			link(k >> 2, c);
+			if (inBank[k >> 2])
+				count[c]++;
+		}
+		if (count[c] == 1)
+			enqueue(c);
+	}
+
+	private void lone(int c) {
+		int b = border[c];
+		if (loners[b] == null)
+			loners[b] = new int[4];
+		else if (lonely[b] == loners[b].length)
+			loners[b] = Arrays.copyOf(loners[b], lonely[b] * 2);
+		isAlone[c] = true;
+		lonerSlot[c] = lonely[b];
+		loners[b][lonely[b]++] = c;
+	}
+
+	private void unlone(int c) {
+		int b = border[c];
+		int last = loners[b][--lonely[b]];
+		loners[b][lonerSlot[c]] = last;
+		lonerSlot[last] = lonerSlot[c];
+		isAlone[c] = false;
+	}
+
+	/**
+	 * @return How many pieces from the bank, in every rotation, fit a cell
+	 */
+	private int countOf(int c) {
+		return isAlone[c] ? alone[border[c]] : count[c];
+	}
+
+	private void link(int piece, int c) {
+		long key = (long) piece * cells + c;
+		int h = find(key);
+		if (linkKeys[h] == key) {
+			cellsOf[piece][linkSlots[h]]++;
+			return;
+		}
+		if (cellsOf[piece] == null)
+			cellsOf[piece] = new int[4];
+		else if (size[piece] == cellsOf[piece].length)
+			cellsOf[piece] = Arrays.copyOf(cellsOf[piece], size[piece] * 2);
+		cellsOf[piece][size[piece]] = c << 3 | 1;
+		linkKeys[h] = key;
+		linkSlots[h] = size[piece]++;
+		if (++links * 2 > linkKeys.length)
+			grow();
+	}
+
+	private void unlink(int piece, int c) {
+		int h = find((long) piece * cells + c);
+		int i = linkSlots[h];
+		if ((--cellsOf[piece][i] & 7) > 0)
+			return;
+		delete(h);
+		//Move the last cell in the list into this cell's place
+		int last = cellsOf[piece][--size[piece]];
+		if (i < size[piece]) {
+			cellsOf[piece][i] = last;
+			linkSlots[find((long) piece * cells + (last >> 3))] = i;
+		}
+	}
+
+	/**
+	 * @return Where a key is in the link table, or the empty slot it would go in
+	 */
+	private int find(long key) {
+		int h = slot(key, linkKeys.length);
+		while (linkKeys[h] != -1 && linkKeys[h] != key)
+			h = (h + 1) & (linkKeys.length - 1);
+		return h;
+	}
+
+	private static int slot(long key, int capacity) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h >>> 40) & (capacity - 1);
+	}
+
+	/**
+	 * Empties a slot of the link table, moving back any key after it that
+	 * 	would otherwise no longer be found.
+	 */
+	private void delete(int h) {
+		int mask = linkKeys.length - 1;
+		for (int j = (h + 1) & mask; linkKeys[j] != -1; j = (j + 1) & mask) {
+			//The key at j can fill the hole if its own slot is not after the hole
+			if ((j - slot(linkKeys[j], linkKeys.length) & mask) >= (j - h & mask)) {
+				linkKeys[h] = linkKeys[j];
+				linkSlots[h] = linkSlots[j];
+				h = j;
+			}
+		}
+		linkKeys[h] = -1;
+		links--;
+	}
+
+	private void grow() {
+		long[] oldKeys = linkKeys;
+		int[] oldSlots = linkSlots;
+		linkKeys = new long[oldKeys.length * 2];
+		linkSlots = new int[oldKeys.length * 2];
+		Arrays.fill(linkKeys, -1);
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != -1) {
+				int h = find(oldKeys[i]);
+				linkKeys[h] = oldKeys[i];
+				linkSlots[h] = oldSlots[i];
+			}
+		}
+	}
+
+	private void enqueue(int c) {
+		if (isQueued[c])
+			return;
+		isQueued[c] = true;
+		queue[queued++] = c;
+	}
+
+	/**
+	 * @return An empty cell, y * width + x, that exactly one (piece,
+	 * 	rotation) from the bank fits, or NONE if there is none
+	 */
+	public int nextForced() {
+		while (queued > 0) {
+			int c = queue[--queued];
+			isQueued[c] = false;
+			if (fits[c] != null && countOf(c) == 1)
+				return c;
+		}
+		return NONE;
+	}
+
+	/**
+	 * @param cell A cell, y * width + x, that nextForced() handed out
+	 * @return The one piece from the bank that fits the cell, as
+	 * 	piece * 4 + number of quarter turns clockwise, or NONE if the count
+	 * 	is not one
+	 */
+	public int getForcedMove(int cell) {
+		if (fits[cell] == null || countOf(cell) != 1)
+			return NONE;
+		for (int k : fits[cell])
+			if (inBank[k >> 2])
+				return k;
+		return NONE;
+	}
+
+	/**
+	 * @return How many pieces from the bank, in every rotation, fit a cell;
+	 * 	0 for occupied cells and cells off the grid
+	 */
+	public int getCount(int x, int y) {
+		return grid.isValid(x, y) ? countOf(y * width + x) : 0;
+	}
+}
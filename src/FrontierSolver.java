@@ -0,0 +1,299 @@
+/**
+ * FrontierSolver.java: Fills a Grid one whole row at a time, remembering
+ * 	what it has learned about each boundary between rows.
+ *
+ * Once a row is complete, how the rest of the board can be filled depends
+ * 	only on which pieces are left and on the south sides of that row (the
+ * 	frontier), not on how the rows above were laid out. So the number of
+ * 	ways to finish the board from each (pieces left, frontier) state is
+ * 	stored in a memo, and any other arrangement of the rows above that
+ * 	reaches the same state is answered from it. This lets the solver count
+ * 	every solution exactly, and prove a board has none, on boards where a
+ * 	depth-first search would revisit the same states too often to finish.
+ *
+ * The memo is kept within a memory budget. When it is full the least
+ * 	recently used states are evicted, which only costs the time to search
+ * 	them again.
+ *
+ */
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class FrontierSolver {
+
+	//The memory budget, in bytes, used when none is given
+	public static final long DEFAULT_MEMORY_BUDGET = 64L << 20;
+
+	//How many placements are made between reports to the monitor
+	private static final int REPORT_INTERVAL = 4096;
+
+	private final int width;
+	private final int height;
+	private final int pieceCount;
+
+	//sides[piece * 4 + rotation] is the piece's packed sides in that rotation
+	private final int[] sides;
+
+	//Whether the outside of the board must be lined with EDGE sides
+	private final boolean bordered;
+
+	//Looks up the (piece, rotation) pairs that fit a cell
+	private final EdgeIndex index;
+
+	//Bit p is set while piece p is still available
+	private final long[] remaining;
+	private final long[] initial;
+
+	//The south side of each cell of the row above the one being filled,
+	//and of the cells of the current row filled so far
+	private final int[] frontier;
+
+	//The placement being built, piece * 4 + rotation for each cell
+	private final int[] cells;
+
+	//The number of ways to finish the board from each row boundary state
+	private final LinkedHashMap<Key, Long> memo;
+	private long maxEntries;
+	private long hits;
+	private long evictions;
+
+	private long nodes;
+	private long reported;
+	private SearchMonitor monitor;
+	private boolean found;
+
+	/**
+	 * Constructor that takes the dimensions of the board and the pieces
+	 * 	that may be placed on it. Null pieces are never placed.
+	 * @param width The width of the grid to be filled
+	 * @param height The height of the grid to be filled
+	 * @param pieces The bank of pieces to fill the grid with
+	 */
+	public FrontierSolver(int width, int height, PuzzlePiece[] pieces) {
+		this.width = width;
+		this.height = height;
+		pieceCount = pieces.length;
+		sides = new int[pieceCount * 4];
+		initial = new long[(pieceCount + 63) >> 6];
+		for (int p = 0; p < pieceCount; p++) {
+			if (pieces[p] == null)
+				continue;
+			initial[p >> 6] |= 1L << p;
+			for (int r = 0; r < 4; r++)
+				sides[p * 4 + r] = Integer.rotateLeft(pieces[p].getPackedSides(), r * 8);
+		}
+		remaining = initial.clone();
+		bordered = PuzzlePiece.isBordered(pieces);
+		index = new EdgeIndex(pieces);
+		frontier = new int[width];
+		cells = new int[width * height];
+		memo = new LinkedHashMap<Key, Long>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<Key, Long> eldest) {
+				if (size() <= maxEntries)
+					return false;
+				evictions++;
+				return true;
+			}
+		};
+		setMemoryBudget(DEFAULT_MEMORY_BUDGET);
+	}
+
+	/**
+	 * Sets how much memory the memo may use. Lowering it below what the
+	 * 	memo already holds evicts states as new ones are added.
+	 * @param bytes The budget, in bytes
+	 */
+	public void setMemoryBudget(long bytes) {
+		//A LinkedHashMap entry, its key and the boxed count, and the key's array
+		long entry = 40 + 24 + 16 + 16 + 8 * (initial.length + (width + 7) / 8);
+		maxEntries = Math.max(1, bytes / entry);
+	}
+
+	/**
+	 * Searches for a way to fill every cell of the board. States already
+	 * 	known to have no way to finish are skipped.
+	 * @return Whether the board was filled. If it was, the placement can be
+	 * 	read with toSolution(). Also returns false if the search was stopped.
+	 */
+	public boolean solve() {
+		start();
+		found = false;
+		fill(0, 1);
+		finish();
+		return found;
+	}
+
+	/**
+	 * Counts every way to fill the board. Solutions that differ only in the
+	 * 	rotation of a piece whose sides repeat are counted separately, as
+	 * 	they are by Player.countSolutions().
+	 * @return The number of solutions, Long.MAX_VALUE if there are at least
+	 * 	that many, or -1 if the search was stopped
+	 */
+	public long countSolutions() {
+		start();
+		long count = fill(0, Long.MAX_VALUE);
+		finish();
+		return isStopped() ? -1 : count;
+	}
+
+	private void start() {
+		nodes = 0;
+		reported = 0;
+		System.arraycopy(initial, 0, remaining, 0, initial.length);
+		Arrays.fill(frontier, 0);
+		Arrays.fill(cells, -1);
+	}
+
+	private void finish() {
+		if (monitor != null && nodes != reported)
+			monitor.report(nodes - reported, 0);
+	}
+
+	/**
+	 * Counts the ways to finish the board from the start of a row, using
+	 * 	and filling the memo.
+	 * @param row The row about to be filled
+	 * @param limit Stop once this many solutions have been found; with a
+	 * 	limit of 1 the solution found is left in cells
+	 * @return The number found, which is only exact if below limit
+	 */
+	private long fill(int row, long limit) {
+		if (row == height) {
+			found = true;
+			return 1;
+		}
+		Key key = new Key(remaining, frontier);
+		Long known = memo.get(key);
+		//A state with solutions still has to be searched to lay one out
+		if (known != null && (known == 0 || limit == Long.MAX_VALUE)) {
+			hits++;
+			return known;
+		}
+		long count = fillCell(row, 0, limit);
+		if (count < limit && !isStopped())
+			memo.put(key, count);
+		return count;
+	}
+
+	/**
+	 * Tries every piece that fits a cell of the current row, then moves on
+	 * 	to the next cell, or to the next row once this one is full.
+	 */
+	private long fillCell(int row, int x, long limit) {
+		if (x == width)
+			return fill(row + 1, limit);
+		int cell = row * width + x;
+		int mask = bordered ? Solver.borderOf(x, row, width, height) : 0;
+		int packed = 0;
+		if (row > 0) {
+			mask |= 1 << Solver.NORTH;
+			packed |= (-frontier[x] & 0xFF) << Solver.NORTH * 8;
+		}
+		if (x > 0) {
+			mask |= 1 << Solver.WEST;
+			packed |= (-PuzzlePiece.unpack(sides[cells[cell - 1]], Solver.EAST) & 0xFF) << Solver.WEST * 8;
+		}
+		int above = frontier[x];
+		long count = 0;
+		for (int k : index.get(mask, packed)) {
+			int p = k >> 2;
+			if ((remaining[p >> 6] & 1L << p) == 0)
+				continue;
+			if (++nodes - reported >= REPORT_INTERVAL && monitor != null) {
+				monitor.report(nodes - reported, cell);
+				reported = nodes;
+			}
+			if (isStopped())
+				break;
+			remaining[p >> 6] &= ~(1L << p);
+			cells[cell] = k;
+			frontier[x] = PuzzlePiece.unpack(sides[k], Solver.SOUTH);
+			//A count with no limit stays unlimited, so the memo can answer it
+			long c = fillCell(row, x + 1, limit == Long.MAX_VALUE ? limit : limit - count);
+			remaining[p >> 6] |= 1L << p;
+			frontier[x] = above;
+			count = c > Long.MAX_VALUE - count ? Long.MAX_VALUE : count + c;
+			if (count >= limit)
+				return count;
+			cells[cell] = -1;
+		}
+		return count;
+	}
+
+	private boolean isStopped() {
+		return monitor != null && monitor.isStopped();
+	}
+
+	/**
+	 * Sets the monitor that the search reports to and polls for being stopped.
+	 * @param monitor The monitor, or null to never stop early
+	 */
+	public void setMonitor(SearchMonitor monitor) {
+		this.monitor = monitor;
+	}
+
+	/**
+	 * @return An immutable copy of the placement found by solve()
+	 */
+	public Solution toSolution() {
+		return new Solution(width, height, cells.clone());
+	}
+
+	/**
+	 * @return The number of placements made by the last search
+	 */
+	public long getNodeCount() {
+		return nodes;
+	}
+
+	/**
+	 * @return The number of row boundary states answered from the memo
+	 */
+	public long getMemoHits() {
+		return hits;
+	}
+
+	/**
+	 * @return The number of row boundary states in the memo
+	 */
+	public int getMemoSize() {
+		return memo.size();
+	}
+
+	/**
+	 * @return The number of states evicted to stay within the memory budget
+	 */
+	public long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * A row boundary state: the pieces still available, followed by the
+	 * 	south sides of the last complete row, packed eight to a long.
+	 */
+	private static class Key {
+
+		private final long[] words;
+		private final int hash;
+
+		public Key(long[] remaining, int[] frontier) {
+			words = Arrays.copyOf(remaining, remaining.length + (frontier.length + 7) / 8);
+			for (int x = 0; x < frontier.length; x++)
+				words[remaining.length + x / 8] |= (frontier[x] & 0xFFL) << (x % 8) * 8;
+			hash = Arrays.hashCode(words);
+		}
+
+		public boolean equals(Object o) {
+			return o instanceof Key && Arrays.equals(words, ((Key) o).words);
+		}
+
+		public int hashCode() {
+			return hash;
+		}
+	}
+}
@@ -36,6 +36,18 @@ public class GridComponent extends JComponent {
 	//Matrix of ints that stores all the rotations
 	private int[][] rotationMatrix;
 	
+	//The cells the piece being dragged can be dropped at, lit up while it is dragged
+	private DropMask dropMask;
+	
+	/**Sets the cells to light up while a piece is dragged
+	 * 
+	 * @param mask The mask of the held piece, or null to light up nothing
+	 */
+	public void setDropMask(DropMask mask){
+		dropMask = mask;
+		repaint();
+	}
+	
 	/**Returns the rotation, as an int in degrees, of the piece at the given coordinates
 	 * 
 	 * @param x
@@ -118,6 +130,17 @@ public class GridComponent extends JComponent {
 				}
 				//if that spot isn't occupied, draw a dot
 				else{
+					//If the piece being dragged can go here, light up the cell
+					if(dropMask!=null && dropMask.isLegal(x, y)){
+						canvas.setColor(new Color(124,204,96,110));
+						canvas.fillRect(
+								(int) ((suitDimension+x*insideDimension)*getWidthScale()),
+								(int) ((suitDimension+y*insideDimension)*getHeightScale()),
+								(int) Math.ceil(insideDimension*getWidthScale()),
+								(int) Math.ceil(insideDimension*getHeightScale()));
+					}
+					
+
 					//This color and stroke are used to draw the markers that show ehere the pieces should go
 					canvas.setStroke(new BasicStroke(1));
 					canvas.setColor(new Color(107,77,51));
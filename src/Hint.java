@@ -0,0 +1,60 @@
+/**
+ * Hint.java: One move that leads from the player's partly filled board
+ * 	to a solution: a piece from the bank, the rotation to give it, and
+ * 	the cell to place it at.
+ *
+ */
+
+public final class Hint {
+
+	private final int x;
+	private final int y;
+	private final int piece;
+	private final int rotation;
+
+	/**
+	 * Constructor used by Player.hint().
+	 * @param x The x-coordinate of the cell
+	 * @param y The y-coordinate of the cell
+	 * @param piece The index of the piece in Player.getPieces()
+	 * @param rotation The rotation to place it with, in degrees
+	 */
+	Hint(int x, int y, int piece, int rotation) {
+		this.x = x;
+		this.y = y;
+		this.piece = piece;
+		this.rotation = rotation;
+	}
+
+	/**
+	 * @return The x-coordinate of the cell to place the piece at
+	 */
+	public int getX() {
+		return x;
+	}
+
+	/**
+	 * @return The y-coordinate of the cell to place the piece at
+	 */
+	public int getY() {
+		return y;
+	}
+
+	/**
+	 * @return The index in Player.getPieces() of the piece to place
+	 */
+	public int getPiece() {
+		return piece;
+	}
+
+	/**
+	 * @return The rotation, in degrees, to place the piece with
+	 */
+	public int getRotation() {
+		return rotation;
+	}
+
+	public String toString() {
+		return "piece " + piece + " at (" + x + ", " + y + "), rotated " + rotation;
+	}
+}
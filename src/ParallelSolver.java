@@ -0,0 +1,301 @@
+/**
+ * ParallelSolver.java: Runs a Solver's search on a ForkJoinPool.
+ *
+ * The search tree is split at the first few cells: every piece and
+ * 	rotation that fits the first cell becomes its own task, which in
+ * 	turn splits on the second cell, and so on. Below the split depth
+ * 	each task runs an ordinary sequential Solver on its own copy of the
+ * 	board. Idle workers steal the unstarted tasks, and the first task to
+ * 	fill the board stops a shared SearchMonitor, which stops all the others.
+ *
+ * The search can also be asked for more than one solution, in which case
+ * 	each task goes on to its next solution with Solver.next() until enough
+ * 	have been accepted.
+ *
+ * A search for one solution can also be checkpointed. Then the board is
+ * 	split into all of its units at the start, each unit a board with the
+ * 	cells down to the split depth fixed, and the checkpoint of every unit
+ * 	not yet finished is saved. Resuming searches just those units, from
+ * 	where each had got to.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+
+public class ParallelSolver {
+
+	//The number of cells the search is split at when none is given
+	public static final int DEFAULT_SPLIT_DEPTH = 2;
+
+	private final ForkJoinPool pool;
+	private final int splitDepth;
+
+	//The monitor shared by all tasks of the last search
+	private SearchMonitor monitor = new SearchMonitor();
+
+	/**
+	 * Constructor that takes the number of worker threads and uses the
+	 * 	default split depth.
+	 * @param parallelism The number of worker threads
+	 */
+	public ParallelSolver(int parallelism) {
+		this(parallelism, DEFAULT_SPLIT_DEPTH);
+	}
+
+	/**
+	 * Constructor that takes the number of worker threads and the number
+	 * 	of cells to split the search at.
+	 * @param parallelism The number of worker threads
+	 * @param splitDepth The number of cells whose candidates become tasks
+	 */
+	public ParallelSolver(int parallelism, int splitDepth) {
+		pool = new ForkJoinPool(Math.max(1, parallelism));
+		this.splitDepth = Math.max(0, splitDepth);
+	}
+
+	/**
+	 * Searches for a way to fill the board of the given Solver, starting
+	 * 	from whatever cells it already has fixed. The given Solver is not
+	 * 	changed. If it has a monitor, the tasks report to it and stop when
+	 * 	it is stopped.
+	 * @param root The Solver describing the board and the bank
+	 * @return A Solver holding a solution, or null if there is none
+	 */
+	public Solver solve(Solver root) {
+		final SearchMonitor stop = new SearchMonitor(root.getMonitor());
+		final AtomicReference<Solver> result = new AtomicReference<Solver>();
+		run(root, stop, new Sink() {
+			public boolean offer(Solver solver) {
+				if (result.compareAndSet(null, solver))
+					stop.stop();
+				return true;
+			}
+		});
+		return result.get();
+	}
+
+	/**
+	 * Searches for solutions of the board of the given Solver until a
+	 * 	number of them have been accepted, or there are no more. The given
+	 * 	Solver is not changed.
+	 * @param root The Solver describing the board and the bank
+	 * @param limit The number of solutions to accept before stopping
+	 * @param accept Decides whether to accept each solution found; it is
+	 * 	called by one thread at a time
+	 * @return The number of solutions accepted
+	 */
+	public int solve(Solver root, final int limit, final Predicate<Solution> accept) {
+		final SearchMonitor stop = new SearchMonitor(root.getMonitor());
+		final int[] accepted = new int[1];
+		run(root, stop, new Sink() {
+			public boolean offer(Solver solver) {
+				synchronized (accepted) {
+					if (accepted[0] < limit && accept.test(solver.toSolution()) && ++accepted[0] == limit)
+						stop.stop();
+					return accepted[0] == limit;
+				}
+			}
+		});
+		return accepted[0];
+	}
+
+	/**
+	 * Searches for a way to fill the board of the given Solver, like
+	 * 	solve(root), saving checkpoints of its units as it goes.
+	 * @param root The Solver describing the board and the bank
+	 * @param from The checkpoints of the units to resume, as saved by an
+	 * 	earlier search of the same board and settings, or null to search
+	 * 	from the start. A checkpoint taken on one thread is resumed as a
+	 * 	single unit.
+	 * @param writer Where the checkpoints are saved
+	 * @return A Solver holding a solution, or null if there is none
+	 */
+	public Solver solve(Solver root, Checkpoint[] from, final CheckpointWriter writer) {
+		Solver copy = new Solver(root);
+		final SearchMonitor stop = new SearchMonitor(root.getMonitor());
+		copy.setMonitor(stop);
+		monitor = stop;
+		Checkpoint[] units = from;
+		if (from == null || !fits(copy, from)) {
+			ArrayList<Checkpoint> split = new ArrayList<Checkpoint>();
+			split(copy, copy.getDepth() + splitDepth, split);
+			units = split.toArray(new Checkpoint[split.size()]);
+		}
+		writer.setUnits(units);
+		final AtomicReference<Solver> result = new AtomicReference<Solver>();
+		ArrayList<UnitTask> tasks = new ArrayList<UnitTask>();
+		for (int u = 0; u < units.length; u++)
+			tasks.add(new UnitTask(copy, units[u], writer, u, stop, result));
+		pool.invoke(new RecursiveAction() {
+			private static final long serialVersionUID = 1L;
+
+			protected void compute() {
+				invokeAll(tasks);
+			}
+		});
+		return result.get();
+	}
+
+	/**
+	 * Lists the units of a board: the ways to fill every cell down to the
+	 * 	split depth, in the order the search would try them.
+	 */
+	private static void split(Solver solver, int splitDepth, ArrayList<Checkpoint> units) {
+		if (solver.isComplete() || solver.getDepth() >= splitDepth) {
+			units.add(solver.toStartCheckpoint());
+			return;
+		}
+		for (int k = 0; k < solver.getPieceCount() * 4; k++) {
+			if (!solver.canPush(k >> 2, k & 3))
+				continue;
+			Solver child = new Solver(solver);
+			child.push(k >> 2, k & 3);
+			split(child, splitDepth, units);
+		}
+	}
+
+	/**
+	 * @return Whether every checkpoint was taken from a search of the board,
+	 * 	with the same cells fixed
+	 */
+	private static boolean fits(Solver root, Checkpoint[] units) {
+		Checkpoint start = root.toStartCheckpoint();
+		for (Checkpoint c : units) {
+			if (c.getSignature() != start.getSignature() || c.getStart() < start.getStart())
+				return false;
+			for (int d = 0; d < start.getStart(); d++)
+				if (c.getChoice(d) != start.getChoice(d))
+					return false;
+		}
+		return true;
+	}
+
+	private void run(Solver root, SearchMonitor stop, Sink sink) {
+		Solver copy = new Solver(root);
+		copy.setMonitor(stop);
+		monitor = stop;
+		pool.invoke(new SearchTask(copy, root.getDepth() + splitDepth, stop, sink));
+	}
+
+	/**
+	 * @return The number of placements made by all tasks of the last search
+	 */
+	public long getNodeCount() {
+		return monitor.getNodeCount();
+	}
+
+	/**
+	 * @return The number of worker threads
+	 */
+	public int getParallelism() {
+		return pool.getParallelism();
+	}
+
+	/**
+	 * Stops the worker threads. The ParallelSolver cannot be used afterwards.
+	 */
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	/**
+	 * Takes the solutions the tasks find.
+	 */
+	private interface Sink {
+
+		/**
+		 * @param solver A Solver holding a solution
+		 * @return Whether the task should stop, rather than look for its
+		 * 	next solution
+		 */
+		boolean offer(Solver solver);
+	}
+
+	/**
+	 * A task that owns one partially filled board. Above the split depth
+	 * 	it forks a subtask per fitting candidate of the next cell; at the
+	 * 	split depth it searches the rest of the board itself.
+	 */
+	private class SearchTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Solver solver;
+		private final int splitDepth;
+		private final SearchMonitor stop;
+		private final Sink sink;
+
+		public SearchTask(Solver solver, int splitDepth, SearchMonitor stop, Sink sink) {
+			this.solver = solver;
+			this.splitDepth = splitDepth;
+			this.stop = stop;
+			this.sink = sink;
+		}
+
+		protected void compute() {
+			if (stop.isStopped())
+				return;
+			if (solver.isComplete() || solver.getDepth() >= splitDepth) {
+				for (boolean found = solver.solve(); found; found = solver.next())
+					if (sink.offer(solver))
+						break;
+				return;
+			}
+			ArrayList<SearchTask> children = new ArrayList<SearchTask>();
+			for (int k = 0; k < solver.getPieceCount() * 4; k++) {
+				if (!solver.canPush(k >> 2, k & 3))
+					continue;
+				Solver child = new Solver(solver);
+				child.push(k >> 2, k & 3);
+				children.add(new SearchTask(child, splitDepth, stop, sink));
+			}
+			invokeAll(children);
+		}
+	}
+
+	/**
+	 * A task that searches one unit of a checkpointed search, fixing the
+	 * 	unit's cells on its own copy of the board and resuming from the
+	 * 	unit's checkpoint.
+	 */
+	private static class UnitTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Solver root;
+		private final Checkpoint from;
+		private final CheckpointWriter writer;
+		private final int unit;
+		private final SearchMonitor stop;
+		private final AtomicReference<Solver> result;
+
+		public UnitTask(Solver root, Checkpoint from, CheckpointWriter writer, int unit, SearchMonitor stop,
+				AtomicReference<Solver> result) {
+			this.root = root;
+			this.from = from;
+			this.writer = writer;
+			this.unit = unit;
+			this.stop = stop;
+			this.result = result;
+		}
+
+		protected void compute() {
+			if (stop.isStopped())
+				return;
+			Solver solver = new Solver(root);
+			for (int d = root.getDepth(); d < from.getStart(); d++)
+				solver.push(from.getChoice(d) >> 2, from.getChoice(d) & 3);
+			solver.setCheckpointWriter(writer.forUnit(unit));
+			if (solver.solve(from)) {
+				if (result.compareAndSet(null, solver))
+					stop.stop();
+			}
+			else if (!stop.isStopped())
+				writer.finished(unit);
+		}
+	}
+}
@@ -7,13 +7,89 @@
  */
 
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Spliterators;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class Player {
 
+	//Engines: how solve() searches for a solution
+	public static final int BACKTRACKING = 0;
+	public static final int DANCING_LINKS = 1;
+	public static final int FRONTIER = 2;
+
+	//How long hint() searches for when not told, in milliseconds
+	public static final long DEFAULT_HINT_BUDGET = 50;
+
 	private PuzzlePiece[] bank;
 	private Grid g;
 
+	//Every piece of the puzzle, in the order the bank was first given
+	private final PuzzlePiece[] pieces;
+	//The position of each piece in pieces, and whether it is in the bank
+	private final IdentityHashMap<PuzzlePiece, Integer> pieceIndex = new IdentityHashMap<PuzzlePiece, Integer>();
+	private final boolean[] inBank;
+	//Whether any piece has an EDGE side, so the outside of the grid must be
+	//lined with EDGE sides
+	private final boolean bordered;
+	//Built the first time getFits() is called
+	private EdgeIndex index;
+
+	//Runs solve() on several threads when parallelism is above 1
+	private ParallelSolver parallelSolver;
+	//Runs solve() in several worker processes instead, if not null
+	private SolverCluster cluster;
+	//Races several orderings of the backtracking search instead, if not null
+	private PortfolioSolver portfolio;
+	//Which empty cell solve() fills next, one of the Solver orderings
+	private int ordering = Solver.ROW_MAJOR;
+	//Which engine solve() searches with
+	private int engine = BACKTRACKING;
+	//Whether the backtracking search skips solutions that are whole-board
+	//rotations of ones it has already covered
+	private boolean symmetryPruning = true;
+	//Solutions of piece sets solve() has already searched, null for none
+	private SolutionCache cache = new SolutionCache(16);
+	//How much memory, in bytes, the FRONTIER engine's memo may use
+	private long memoryBudget = FrontierSolver.DEFAULT_MEMORY_BUDGET;
+	//How many dead states the backtracking search's transposition table
+	//holds, 0 for no table, and the table the last search used
+	private int tableSize = 0;
+	private TranspositionTable table;
+	//Where the backtracking search saves checkpoints, null for nowhere,
+	//and how often, in milliseconds
+	private File checkpointFile;
+	private long checkpointInterval = CheckpointWriter.DEFAULT_INTERVAL;
+	//Completes the grid for hint(), kept from one hint to the next
+	private CompletionCache hints;
+	//Checks in the background whether the grid can still be completed
+	//after each move, if not null
+	private DeadEndWatcher watcher;
+	//Above 0 while many cells are being changed at once, so the watcher is
+	//handed the grid only at the end, and whether any cell has changed
+	private int batch;
+	private boolean batchMoved;
+	//The cells the piece being dragged could be dropped at, if one is
+	private DropMask dropMask;
+	//Counts what fits each cell, so play() can follow a move with every
+	//forced one, if assist is on
+	private ForcedMoves forced;
+	//The cells play() filled by itself after the last move
+	private ArrayList<Integer> forcedCells = new ArrayList<Integer>();
+	//Each play() that placed a piece, newest last, as the cell and the
+	//index of every piece it placed: {cell, piece, cell, piece, ...}, with
+	//-1 for a piece that is not one of the puzzle's
+	private final ArrayList<int[]> history = new ArrayList<int[]>();
+	//Whether solve() keeps the pieces already on the grid, and the cells
+	//of the fewest pieces to take off when they cannot all stay
+	private boolean keepPlaced;
+	private volatile ArrayList<Integer> removals;
+
 	/**
 	 * Removes a PuzzlePiece from the bank by searching for
 	 * 	an identical reference, and then setting the slot to null.
@@ -25,6 +101,7 @@ public class Player {
 		for (int i = 0; i < bank.length; i++) {
 			if (bank[i] != null && bank[i].equals(p)) {
 				bank[i] = null;
+				setInBank(p, false);
 				return;
 			}
 		}
@@ -41,6 +118,7 @@ public class Player {
 		for (int i = 0; i < bank.length; i++) {
 			if (bank[i] == null) {
 				bank[i] = p;
+				setInBank(p, true);
 				return;
 			}
 		}
@@ -55,6 +133,24 @@ public class Player {
 	public Player(Grid grid, PuzzlePiece[] pieces) {
 		bank = pieces;
 		g = grid;
+		this.pieces = pieces.clone();
+		inBank = new boolean[pieces.length];
+		for (int i = 0; i < pieces.length; i++) {
+			if (pieces[i] != null) {
+				pieceIndex.put(pieces[i], i);
+				inBank[i] = true;
+			}
+		}
+		bordered = PuzzlePiece.isBordered(pieces);
+	}
+
+	private void setInBank(PuzzlePiece p, boolean b) {
+		Integer i = pieceIndex.get(p);
+		if (i != null && inBank[i] != b) {
+			inBank[i] = b;
+			if (forced != null)
+				forced.bankChanged(i, b);
+		}
 	}
 
 	/**
@@ -69,6 +165,8 @@ public class Player {
 	public boolean remove(int x, int y) {
 		boolean occupied = g.isOccupied(x, y);
 		addToBank(g.setCell(x, y, null));
+		if (occupied)
+			moved(x, y);
 		return occupied;
 	}
 
@@ -80,10 +178,12 @@ public class Player {
 	 * @return Whether the piece fits at the location specified. A piece is said
 	 * 	to "fit" if and only if each side is the complement of the side that it is
 	 * 	to be adjoined with, of if the side that it is to be adjoined with contains no
-	 * 	other piece.
+	 * 	other piece. An EDGE side may only face the outside of the grid, and if any
+	 * 	piece has an EDGE side, every side facing the outside must be an EDGE.
 	 */
 	public boolean canPlace(int x, int y, PuzzlePiece p) {
 		return !(g.isOccupied(x, y))
+				&& p.getEdges() == border(x, y)
 				&& ((g.getCell(x - 1, y) == null || (g.getCell(x - 1, y)
 						.getSide(PuzzlePiece.EAST) == -p
 						.getSide(PuzzlePiece.WEST))))
@@ -98,6 +198,64 @@ public class Player {
 						.getSide(PuzzlePiece.SOUTH))));
 	}
 
+	/**
+	 * Lists every piece still in the bank, in every rotation, that
+	 * 	canPlace() would accept at a slot. The pieces come straight out of
+	 * 	an EdgeIndex keyed on the sides of the occupied neighbours, so no
+	 * 	piece is rotated or tried against the grid.
+	 * @param x The x-coordinate of the slot
+	 * @param y The y-coordinate of the slot
+	 * @return The fits, each encoded as (index in getPieces()) * 4 + the
+	 * 	number of quarter turns clockwise. Empty if the slot is occupied.
+	 */
+	public ArrayList<Integer> getFits(int x, int y) {
+		ArrayList<Integer> fits = new ArrayList<Integer>();
+		if (g.isOccupied(x, y) || !g.isValid(x, y))
+			return fits;
+		if (index == null)
+			index = new EdgeIndex(pieces);
+		int mask = 0;
+		int packed = 0;
+		int[][] neighbours = { { x, y - 1 }, { x + 1, y }, { x, y + 1 }, { x - 1, y } };
+		for (int d = 0; d < 4; d++) {
+			PuzzlePiece n = g.getCell(neighbours[d][0], neighbours[d][1]);
+			if (n != null) {
+				mask |= 1 << d;
+				packed |= (-n.getSide((d + 2) % 4 * 90) & 0xFF) << d * 8;
+			}
+		}
+		mask |= border(x, y);
+		for (int k : index.get(mask, packed))
+			if (inBank[k >> 2])
+				fits.add(k);
+		return fits;
+	}
+
+	/**
+	 * @return The directions of a slot that face the outside of the grid,
+	 * 	bit d set for direction index d, if the puzzle is bordered; otherwise 0
+	 */
+	private int border(int x, int y) {
+		return bordered ? Solver.borderOf(x, y, g.getWidth(), g.getHeight()) : 0;
+	}
+
+	/**
+	 * @return Whether any piece has an EDGE side, so that the outside of the
+	 * 	grid must be lined with EDGE sides
+	 */
+	public boolean isBordered() {
+		return bordered;
+	}
+
+	/**
+	 * Returns the pieces of the puzzle in the order the bank was first
+	 * 	given, which is the order getFits() refers to.
+	 * @return Every piece, whether in the bank or on the grid
+	 */
+	public PuzzlePiece[] getPieces() {
+		return pieces.clone();
+	}
+
 	/**
 	 * Attempts to place the piece, with its current orientation at the
 	 * location specified.
@@ -110,120 +268,879 @@ public class Player {
 		if (p != null && canPlace(x, y, p)) {
 			removeFromBank(p);
 			g.setCell(x, y, p);
+			moved(x, y);
 			return true;
 		}
 		return false;
 	}
 
 	/**
-	 * Removes all pieces from the grid and returns them to the bank.
-	 * Does not return anything.
+	 * Places a piece for the player: like place(), but with assist on,
+	 * 	every empty cell that exactly one (piece, rotation) from the bank
+	 * 	fits is then filled, again and again until none is left. The piece
+	 * 	and everything filled after it are remembered together, so undo()
+	 * 	takes them all back at once.
+	 * @param x The x-coordinate of the slot that we want to place it at
+	 * @param y The y-coordinate of the slot that we want to place it at
+	 * @param p The piece that we want to place at the location
+	 * @return Whether the piece was placed at the location
 	 */
-	public void returnAllPieces() {
-		for (int i = 0; i < g.getWidth(); i++) {
-			for (int j = 0; j < g.getHeight(); j++) {
-				remove(j, i);
+	public boolean play(int x, int y, PuzzlePiece p) {
+		forcedCells = new ArrayList<Integer>();
+		beginBatch();
+		try {
+			return playForced(x, y, p);
+		} finally {
+			endBatch();
+		}
+	}
+
+	private boolean playForced(int x, int y, PuzzlePiece p) {
+		if (!place(x, y, p))
+			return false;
+		ArrayList<Integer> move = new ArrayList<Integer>();
+		move.add(y * g.getWidth() + x);
+		Integer placed = pieceIndex.get(p);
+		move.add(placed != null ? placed : -1);
+		if (forced != null) {
+			int cell;
+			while ((cell = forced.nextForced()) != ForcedMoves.NONE) {
+				int k = forced.getForcedMove(cell);
+				setSolved(cell % g.getWidth(), cell / g.getWidth(), pieces[k >> 2], (k & 3) * 90);
+				forcedCells.add(cell);
+				move.add(cell);
+				move.add(k >> 2);
 			}
 		}
+		int[] group = new int[move.size()];
+		for (int i = 0; i < group.length; i++)
+			group[i] = move.get(i);
+		history.add(group);
+		return true;
 	}
 
 	/**
-	 * Sets all of the grid locations to null, effectively removing all of the pieces.
-	 * Does not return anything.
+	 * @return The cells, each y * width + x, that the last play() filled by
+	 * 	itself after the player's piece, in the order they were filled
 	 */
-	private void clear() {
-		for (int i = 0; i < g.getWidth(); i++)
-			for (int j = 0; j < g.getHeight(); j++)
-				g.setCell(i, j, null);
+	public ArrayList<Integer> getForced() {
+		return forcedCells;
 	}
 
 	/**
-	 * Creates an ArrayList of all of the possible permutations of the pieces in the bank.
-	 * See solve() for a description of usefulness.
-	 * @param pieces The array of pieces to create the list of permutations from.
-	 * @return An ArrayList of the permutations of the pieces
+	 * Takes back the last play(): the player's piece and every piece filled
+	 * 	after it go back to the bank. A piece that has been moved since is
+	 * 	left where it is.
+	 * @return The pieces returned to the bank, empty if there was nothing
+	 * 	to take back
 	 */
-	private static ArrayList<PuzzlePiece[]> permutation(PuzzlePiece[] pieces) {
-		ArrayList<PuzzlePiece[]> perms = new ArrayList<PuzzlePiece[]>();
-		if (pieces.length == 1) {
-			perms.add(pieces);
-			return perms;
+	public ArrayList<PuzzlePiece> undo() {
+		ArrayList<PuzzlePiece> back = new ArrayList<PuzzlePiece>();
+		if (history.isEmpty())
+			return back;
+		int[] group = history.remove(history.size() - 1);
+		beginBatch();
+		try {
+			for (int i = group.length - 2; i >= 0; i -= 2) {
+				int x = group[i] % g.getWidth();
+				int y = group[i] / g.getWidth();
+				if (group[i + 1] >= 0 && g.getCell(x, y) == pieces[group[i + 1]]) {
+					remove(x, y);
+					back.add(pieces[group[i + 1]]);
+				}
+			}
+		} finally {
+			endBatch();
 		}
-		for (int i = 0; i < pieces.length; i++) {
-			PuzzlePiece[] smallPieces = new PuzzlePiece[pieces.length - 1];
-			for (int j = 0; j < i; j++)
-				smallPieces[j] = pieces[j];
-			for (int j = i; j < pieces.length - 1; j++)
-				smallPieces[j] = pieces[j + 1];
-
-			ArrayList<PuzzlePiece[]> smallPerms = permutation(smallPieces);
-			for (PuzzlePiece[] pieceArray : smallPerms) {
-				PuzzlePiece[] pieceArray2 = new PuzzlePiece[pieceArray.length + 1];
-				System.arraycopy(pieceArray, 0, pieceArray2, 1, pieceArray.length);
-				pieceArray2[0] = pieces[i];
-				perms.add(pieceArray2);
+		return back;
+	}
+
+	/**
+	 * @return Whether undo() has a play() to take back
+	 */
+	public boolean canUndo() {
+		return !history.isEmpty();
+	}
+
+	/**
+	 * Sets whether play() fills every forced move after the player's. The
+	 * 	counts of what fits each cell are made once here and then kept up to
+	 * 	date a cell at a time, so finding each forced move costs only the
+	 * 	cells around the last one placed.
+	 * @param on true to fill forced moves, false (the default) not to
+	 */
+	public void setAssist(boolean on) {
+		if (!on)
+			forced = null;
+		else if (forced == null) {
+			if (index == null)
+				index = new EdgeIndex(pieces);
+			forced = new ForcedMoves(g, index, pieces, inBank, bordered);
+		}
+	}
+
+	/**
+	 * @return Whether play() fills forced moves
+	 */
+	public boolean isAssist() {
+		return forced != null;
+	}
+
+	/**
+	 * Brings the drop mask and the forced move counts up to date with a
+	 * 	cell that has been placed on or emptied, and hands the grid to the
+	 * 	dead-end watcher, if there are any.
+	 */
+	private void moved(int x, int y) {
+		if (dropMask != null)
+			dropMask.cellChanged(x, y);
+		if (forced != null)
+			forced.cellChanged(x, y);
+		if (batch > 0)
+			batchMoved = true;
+		else if (watcher != null)
+			watcher.submit(placement());
+	}
+
+	/**
+	 * Starts changing many cells at once: until the matching endBatch(),
+	 * 	the dead-end watcher is not handed the grid after each one.
+	 */
+	private void beginBatch() {
+		batch++;
+	}
+
+	/**
+	 * Ends what beginBatch() started, and hands the grid to the dead-end
+	 * 	watcher once if any cell changed in between.
+	 */
+	private void endBatch() {
+		if (--batch > 0 || !batchMoved)
+			return;
+		batchMoved = false;
+		if (watcher != null)
+			watcher.submit(placement());
+	}
+
+	/**
+	 * Starts keeping track of every cell where a piece being dragged could
+	 * 	be placed, in any rotation. The mask is worked out in full now, and
+	 * 	after that only around the cells that place() and remove() change,
+	 * 	until endDrag() is called.
+	 * @param held The piece being dragged
+	 * @return The mask, which stays up to date until the drag ends
+	 */
+	public DropMask startDrag(PuzzlePiece held) {
+		dropMask = new DropMask(g, held, bordered);
+		return dropMask;
+	}
+
+	/**
+	 * Stops keeping the mask of startDrag() up to date.
+	 */
+	public void endDrag() {
+		dropMask = null;
+	}
+
+	/**
+	 * Makes every place() and remove() start a check, in the background,
+	 * 	of whether the grid can still be completed. Each check cancels any
+	 * 	that are still running for older moves. Changes to many cells at
+	 * 	once, such as laying out a solution or clearing the grid, start a
+	 * 	single check when they are done. The answer can be read
+	 * 	with getSolvability() at any time, without waiting.
+	 * @param listener Told each time the answer changes, from the
+	 * 	watcher's thread; may be null
+	 */
+	public void watchDeadEnds(SolvabilityListener listener) {
+		stopWatchingDeadEnds();
+		watcher = new DeadEndWatcher(g.getWidth(), g.getHeight(), pieces, listener);
+		watcher.submit(placement());
+	}
+
+	/**
+	 * Stops checking whether the grid can still be completed.
+	 */
+	public void stopWatchingDeadEnds() {
+		if (watcher != null)
+			watcher.shutdown();
+		watcher = null;
+	}
+
+	/**
+	 * @return Whether the grid can still be completed, as far as the
+	 * 	background check has got: one of the DeadEndWatcher statuses, and
+	 * 	UNKNOWN if nothing is being watched
+	 */
+	public int getSolvability() {
+		return watcher == null ? DeadEndWatcher.UNKNOWN : watcher.getStatus();
+	}
+
+	/**
+	 * Removes all pieces from the grid and returns them to the bank.
+	 * Does not return anything.
+	 */
+	public void returnAllPieces() {
+		history.clear();
+		beginBatch();
+		try {
+			for (int i = 0; i < g.getWidth(); i++) {
+				for (int j = 0; j < g.getHeight(); j++) {
+					remove(i, j);
+				}
 			}
+		} finally {
+			endBatch();
 		}
-		return perms;
 	}
 
 	/**
-	 * Solves the puzzle. Using the list of permutations of the pieces,
-	 * 	we assign index 0 to the top-left corner and then each successive
-	 * 	index will be assigned from left to right and then top to bottom.
-	 * 	Thus each of the arrays that are in the ArrayList force the
-	 * 	pieces to go in a certain order. If, at any point, a piece cannot
-	 * 	be placed in this successive order, we will go to the next array
-	 * 	and try again.
+	 * Solves the puzzle. By default the search itself is done by a
+	 * 	Solver, which fills the grid one cell at a time, undoing only its
+	 * 	last placement when it reaches a cell that no remaining piece
+	 * 	fits. With a parallelism above 1 the search is split across a
+	 * 	ParallelSolver's threads instead, and with the DANCING_LINKS
+	 * 	engine it is solved as an exact cover problem. The same pieces,
+	 * 	in any order and rotation, are only searched for once: later
+	 * 	calls take the solution from the SolutionCache. If a solution is
+	 * 	found, each piece is rotated to its solved orientation and placed.
+	 *
+	 * With setKeepPlaced() on, the pieces already on the grid stay where
+	 * 	they are, and only the empty cells are searched. If they cannot all
+	 * 	stay, the grid is left as it is and getRemovals() tells which of
+	 * 	them to take off.
 	 * @return Whether the puzzle was solved.
 	 */
 	public boolean solve() {
-		returnAllPieces();
-		ArrayList<PuzzlePiece[]> allPermutations = permutation(bank);
-		for (int i = allPermutations.size()-1;i >-1; i--) {
-			PuzzlePiece[] p = allPermutations.get(i);
-			boolean isSuccessful = false;
-			for (int j = 0; j < 4; j++) {
-				place(0, 0, p[0]);
-				for (int k = 1; k < p.length; k++) {
-					if (!tryToPlace(k % g.getWidth(), k / g.getHeight(), p[k])) {
-						isSuccessful = false;
-						clear();
-						break;
-					} else
-						isSuccessful = true;
+		Solution placed = keepPlaced && !g.isEmpty() ? placement() : null;
+		if (placed != null) {
+			Solution s = completeKeeping(placed, null);
+			if (s != null)
+				apply(s);
+			return s != null;
+		}
+		//The watcher is handed the grid once, cleared or solved
+		beginBatch();
+		try {
+			returnAllPieces();
+			PuzzlePiece[] pieces = bank.clone();
+			Solution s = findSolution(pieces, null);
+			if (s == null)
+				return false;
+			for (int y = 0; y < g.getHeight(); y++)
+				for (int x = 0; x < g.getWidth(); x++)
+					setSolved(x, y, pieces[s.getPiece(x, y)], s.getRotation(x, y));
+			return true;
+		} finally {
+			endBatch();
+		}
+	}
+
+	/**
+	 * Lays the pieces out in the arrangement that matches the most pairs of
+	 * 	neighbouring sides that an EdgeOptimizer can find in the given time.
+	 * 	Meant for puzzles that solve() cannot do: ones with no solution, or
+	 * 	too big to search. Pieces left over on a board too small for them
+	 * 	stay in the bank.
+	 * @param timeoutMillis How long to search for
+	 * @return The number of matching sides in the arrangement laid out
+	 */
+	public int optimize(long timeoutMillis) {
+		EdgeOptimizer optimizer = new EdgeOptimizer(g.getWidth(), g.getHeight(), pieces);
+		optimizer.optimize(timeoutMillis);
+		apply(optimizer.getBestSolution());
+		return optimizer.getBestScore();
+	}
+
+	/**
+	 * Suggests a move towards a solution within DEFAULT_HINT_BUDGET.
+	 * @return The move, or null as for hint(long)
+	 */
+	public Hint hint() {
+		return hint(DEFAULT_HINT_BUDGET);
+	}
+
+	/**
+	 * Suggests a move that leads to a solution, taking every piece on the
+	 * 	grid as it is. The completion comes from a CompletionCache kept
+	 * 	from one hint to the next, so as long as the grid agrees with the
+	 * 	completion found last time the move is read off it without
+	 * 	searching, and a search that ran out of time carries on where it
+	 * 	stopped if the grid has not changed. The move is at the empty cell
+	 * 	with the fewest pieces that fit, where a hint helps most. The grid
+	 * 	and the bank are not changed.
+	 * @param timeoutMillis How long to search for, or -1 for no limit
+	 * @return The move, or null if the grid is full, cannot be completed,
+	 * 	or no completion was found in time
+	 */
+	public Hint hint(long timeoutMillis) {
+		if (hints == null)
+			hints = new CompletionCache(g.getWidth(), g.getHeight(), pieces);
+		hints.update(placement());
+		Solution s = hints.complete(new SearchMonitor(timeoutMillis));
+		if (s == null)
+			return null;
+		Hint best = null;
+		int bestCount = Integer.MAX_VALUE;
+		for (int y = 0; y < g.getHeight(); y++) {
+			for (int x = 0; x < g.getWidth(); x++) {
+				if (g.isOccupied(x, y))
+					continue;
+				int count = getFits(x, y).size();
+				if (count < bestCount) {
+					best = new Hint(x, y, s.getPiece(x, y), s.getRotation(x, y));
+					bestCount = count;
 				}
-				if (isSuccessful)
-					return true;
-				p[0].rotate();
 			}
 		}
-		bank = allPermutations.get(0);
-		return false;
+		return best;
 	}
 
 	/**
-	 * Tries to place a piece at a certain location of the grid by trying
-	 * to place it using any of its four orientations.
-	 * @param x The x-coordinate of the slot that we want to place it at
-	 * @param y The y-coordinate of the slot that we want to place it at
-	 * @param p The piece that we want to place at the location
-	 * @return Whether the piece could be placed at the location
+	 * Starts solving the puzzle on a background thread and returns at once.
+	 * 	The grid and the bank are not touched; when the result arrives,
+	 * 	pass it to apply() on the event thread to lay it out.
+	 * @param timeoutMillis How long the search may run, or -1 for no limit
+	 * @param listener Told about progress every SolveJob.PROGRESS_INTERVAL
+	 * 	milliseconds, from a timer thread; may be null
+	 * @return The job, with the future result and a way to cancel it
 	 */
-	private boolean tryToPlace(int x, int y, PuzzlePiece p) {
-		boolean hasPlaced = false;
-		if (p == null)
-			return false;
-		for (int j = 0; j < 4; j++) {
-			if (place(x, y, p)) {
-				hasPlaced = true;
-				break;
+	public SolveJob solveAsync(long timeoutMillis, ProgressListener listener) {
+		final SearchMonitor monitor = new SearchMonitor(timeoutMillis);
+		final SolveJob job = new SolveJob(monitor, listener);
+		//With setKeepPlaced() on, the grid as it is now is kept
+		final Solution placed = keepPlaced && !g.isEmpty() ? placement() : null;
+		Thread t = new Thread(new Runnable() {
+			public void run() {
+				try {
+					job.finish(placed != null ? completeKeeping(placed, monitor) : findSolution(pieces, monitor));
+				} catch (RuntimeException e) {
+					job.fail(e);
+				}
+			}
+		}, "Solver");
+		t.setDaemon(true);
+		t.start();
+		return job;
+	}
+
+	/**
+	 * @return The pieces on the grid as a placement whose piece indices
+	 * 	refer to getPieces()
+	 */
+	private Solution placement() {
+		int[] cells = new int[g.getWidth() * g.getHeight()];
+		for (int y = 0; y < g.getHeight(); y++) {
+			for (int x = 0; x < g.getWidth(); x++) {
+				PuzzlePiece p = g.getCell(x, y);
+				Integer i = p == null ? null : pieceIndex.get(p);
+				cells[y * g.getWidth() + x] = i == null ? -1 : i * 4 + p.getRotation() / 90;
+			}
+		}
+		return new Solution(g.getWidth(), g.getHeight(), cells);
+	}
+
+	/**
+	 * Searches for a solution that keeps every piece of a placement where
+	 * 	it is, by fixing them and filling only the empty cells. If there is
+	 * 	none, searches again for the fewest of them to give up, allowing one
+	 * 	more each time, and leaves their cells in getRemovals().
+	 * @param placed The pieces on the grid, from placement()
+	 * @param monitor The monitor for the search, or null
+	 * @return A solution whose piece indices refer to getPieces(), or null
+	 */
+	private Solution completeKeeping(Solution placed, SearchMonitor monitor) {
+		removals = null;
+		Solver solver = new Solver(g.getWidth(), g.getHeight(), pieces);
+		//The fixed cells may be anywhere, so fill whichever empty cell
+		//has the fewest pieces that fit
+		solver.setOrdering(Solver.MOST_CONSTRAINED);
+		solver.setMonitor(monitor);
+		boolean fits = true;
+		int count = 0;
+		for (int y = 0; y < g.getHeight(); y++) {
+			for (int x = 0; x < g.getWidth(); x++) {
+				if (placed.getPiece(x, y) < 0)
+					continue;
+				count++;
+				fits = fits && solver.fix(x, y, placed.getPiece(x, y), placed.getRotation(x, y) / 90);
+			}
+		}
+		if (fits && solver.solve())
+			return solver.toSolution();
+		solver = new Solver(g.getWidth(), g.getHeight(), pieces);
+		solver.setOrdering(Solver.MOST_CONSTRAINED);
+		solver.setMonitor(monitor);
+		for (int limit = 1; limit <= count && (monitor == null || !monitor.isStopped()); limit++) {
+			solver.setPreferred(placed, limit);
+			if (solver.solve()) {
+				ArrayList<Integer> cells = new ArrayList<Integer>();
+				for (int y = 0; y < g.getHeight(); y++)
+					for (int x = 0; x < g.getWidth(); x++)
+						if (placed.getPiece(x, y) >= 0 && (solver.getPiece(x, y) != placed.getPiece(x, y)
+								|| solver.getRotation(x, y) != placed.getRotation(x, y)))
+							cells.add(y * g.getWidth() + x);
+				removals = cells;
+				return null;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Looks a set of pieces up in the cache, and searches for a solution
+	 * 	with the selected engine if it is not there.
+	 * @param pieces The pieces to fill the grid with
+	 * @param monitor The monitor for the search, or null
+	 * @return A solution whose piece indices refer to pieces, or null
+	 */
+	private Solution findSolution(PuzzlePiece[] pieces, SearchMonitor monitor) {
+		Solution s = cache == null ? null : cache.get(g.getWidth(), g.getHeight(), pieces);
+		if (s == null) {
+			s = search(pieces, monitor);
+			if (s != null && cache != null)
+				cache.put(g.getWidth(), g.getHeight(), pieces, s);
+		}
+		return s;
+	}
+
+	/**
+	 * Runs the selected engine on an empty grid.
+	 * @param pieces The pieces to fill the grid with
+	 * @param monitor The monitor for the search, or null
+	 * @return A solution whose piece indices refer to pieces, or null
+	 */
+	private Solution search(PuzzlePiece[] pieces, SearchMonitor monitor) {
+		if (engine == DANCING_LINKS) {
+			DancingLinks links = new DancingLinks(g.getWidth(), g.getHeight(), pieces);
+			links.setMonitor(monitor);
+			return links.solve() ? links.toSolution() : null;
+		}
+		if (engine == FRONTIER) {
+			FrontierSolver frontier = newFrontierSolver(pieces);
+			frontier.setMonitor(monitor);
+			return frontier.solve() ? frontier.toSolution() : null;
+		}
+		if (cluster != null)
+			return cluster.solve(g.getWidth(), g.getHeight(), pieces, ordering, symmetryPruning, monitor);
+		Solver solver = newSolver(pieces);
+		solver.setMonitor(monitor);
+		solver.setSymmetryPruning(symmetryPruning);
+		if (portfolio != null)
+			return toSolution(portfolio.solve(solver));
+		if (checkpointFile == null && parallelSolver != null)
+			return toSolution(parallelSolver.solve(solver));
+		if (checkpointFile == null)
+			return toSolution(solver.solve() ? solver : null);
+		//Resume from the last checkpoint, if it was taken from this puzzle
+		Checkpoint[] from = Checkpoint.loadUnits(checkpointFile);
+		CheckpointWriter writer = new CheckpointWriter(checkpointFile, checkpointInterval);
+		Solver found;
+		if (parallelSolver != null)
+			found = parallelSolver.solve(solver, from, writer);
+		else if (from != null && from.length != 1) {
+			//Taken on more threads, so its units are searched one by one
+			ParallelSolver units = new ParallelSolver(1);
+			try {
+				found = units.solve(solver, from, writer);
+			} finally {
+				units.shutdown();
 			}
+		}
+		else {
+			solver.setCheckpointWriter(writer);
+			found = solver.solve(from == null ? null : from[0]) ? solver : null;
+		}
+		writer.finish(monitor == null || !monitor.isStopped());
+		return toSolution(found);
+	}
+
+	private static Solution toSolution(Solver solver) {
+		return solver == null ? null : solver.toSolution();
+	}
+
+	/**
+	 * Rotates a piece to the rotation a solver chose for it and moves it
+	 * 	from the bank to the grid.
+	 * @param x The x-coordinate of the slot
+	 * @param y The y-coordinate of the slot
+	 * @param p The piece to place
+	 * @param rotation The rotation, in degrees, to place it with
+	 */
+	private void setSolved(int x, int y, PuzzlePiece p, int rotation) {
+		while (p.getRotation() != rotation)
 			p.rotate();
+		removeFromBank(p);
+		g.setCell(x, y, p);
+		moved(x, y);
+	}
+
+	/**
+	 * Lazily enumerates every solution of the puzzle, starting from an
+	 * 	empty grid. Solutions are searched for only as the stream asks for
+	 * 	them, so limit() and findFirst() stop the search early, and a
+	 * 	parallel() stream splits the search tree between threads. The grid
+	 * 	and the bank are not changed.
+	 * @return The solutions, with piece indices referring to getPieces()
+	 */
+	public Stream<Solution> solutions() {
+		Solver root = newSolver(pieces);
+		return StreamSupport.stream(new SolutionSpliterator(root), false);
+	}
+
+	/**
+	 * Counts every solution of the puzzle. With symmetry pruning on, only
+	 * 	one solution out of each set of whole-board rotations is searched
+	 * 	for, and the count is multiplied back up. With the FRONTIER engine
+	 * 	the board is counted row by row instead.
+	 * @return The number of solutions, rotations of the board included
+	 */
+	public long countSolutions() {
+		if (engine == FRONTIER)
+			return newFrontierSolver(pieces).countSolutions();
+		Solver root = newSolver(pieces);
+		root.setSymmetryPruning(symmetryPruning);
+		return countDistinct(root) * root.getMultiplicity();
+	}
+
+	/**
+	 * Counts the solutions of the puzzle, treating solutions that are
+	 * 	rotations of the whole board as the same.
+	 * @return The number of solutions that are not rotations of each other
+	 */
+	public long countSolutionsUpToRotation() {
+		if (engine == FRONTIER)
+			return countSolutions() / (g.getWidth() == g.getHeight() ? 4 : 2);
+		Solver root = newSolver(pieces);
+		root.setSymmetryPruning(true);
+		long count = countDistinct(root);
+		//Without pruning every set of rotations was counted in full
+		return root.getMultiplicity() > 1 ? count
+				: count / (g.getWidth() == g.getHeight() ? 4 : 2);
+	}
+
+	/**
+	 * @return A Solver with the ordering and, if there is to be one, a new
+	 * 	transposition table, which its copies on other threads will share
+	 */
+	private Solver newSolver(PuzzlePiece[] pieces) {
+		Solver solver = new Solver(g.getWidth(), g.getHeight(), pieces);
+		solver.setOrdering(ordering);
+		if (tableSize > 0) {
+			table = new TranspositionTable(tableSize);
+			solver.setTranspositionTable(table);
 		}
-		return hasPlaced;
+		return solver;
 	}
-	
+
+	private FrontierSolver newFrontierSolver(PuzzlePiece[] pieces) {
+		FrontierSolver frontier = new FrontierSolver(g.getWidth(), g.getHeight(), pieces);
+		frontier.setMemoryBudget(memoryBudget);
+		return frontier;
+	}
+
+	/**
+	 * Checks whether the puzzle has exactly one solution, starting from an
+	 * 	empty grid. Rather than counting every solution, the search stops as
+	 * 	soon as it finds a second one that does not look like the first,
+	 * 	even with the whole board turned. With a parallelism above 1 the
+	 * 	search is split across the ParallelSolver's threads. The grid and
+	 * 	the bank are not changed.
+	 * @return The verdict, with the solutions found as witnesses
+	 */
+	public Uniqueness checkUniqueness() {
+		Solver root = newSolver(pieces);
+		//Each set of whole-board rotations is searched only once
+		root.setSymmetryPruning(true);
+		if (parallelSolver == null)
+			return Uniqueness.check(root, pieces);
+		final ArrayList<Solution> found = new ArrayList<Solution>();
+		Predicate<Solution> distinct = new Predicate<Solution>() {
+			public boolean test(Solution s) {
+				for (Solution f : found)
+					if (Uniqueness.looksAlike(f, s, pieces))
+						return false;
+				found.add(s);
+				return true;
+			}
+		};
+		parallelSolver.solve(root, 2, distinct);
+		return new Uniqueness(found.size() > 0 ? found.get(0) : null, found.size() > 1 ? found.get(1) : null);
+	}
+
+	private long countDistinct(Solver root) {
+		return StreamSupport.stream(new SolutionSpliterator(root), getParallelism() > 1).count();
+	}
+
+	/**
+	 * @return The solutions of solutions(), one at a time
+	 */
+	public Iterator<Solution> solutionIterator() {
+		Solver root = newSolver(pieces);
+		return Spliterators.iterator(new SolutionSpliterator(root));
+	}
+
+	/**
+	 * Lays out a solution on the grid. Pieces already where the solution
+	 * 	puts them stay there; every other piece is returned to the bank
+	 * 	first.
+	 * @param s A solution whose piece indices refer to getPieces()
+	 */
+	public void apply(Solution s) {
+		beginBatch();
+		try {
+			for (int y = 0; y < g.getHeight(); y++) {
+				for (int x = 0; x < g.getWidth(); x++) {
+					PuzzlePiece p = g.getCell(x, y);
+					if (p != null && (s.getPiece(x, y) < 0 || p != pieces[s.getPiece(x, y)]
+							|| p.getRotation() != s.getRotation(x, y)))
+						remove(x, y);
+				}
+			}
+			for (int y = 0; y < g.getHeight(); y++)
+				for (int x = 0; x < g.getWidth(); x++)
+					if (s.getPiece(x, y) >= 0 && !g.isOccupied(x, y))
+						setSolved(x, y, pieces[s.getPiece(x, y)], s.getRotation(x, y));
+		} finally {
+			endBatch();
+		}
+	}
+
+	/**
+	 * Sets whether solve() and solveAsync() keep the pieces already on the
+	 * 	grid where they are and search only the empty cells. On a big board
+	 * 	with most of it done this is far less to search. An empty grid is
+	 * 	solved as usual.
+	 * @param on true to keep the pieces on the grid, false (the default)
+	 * 	to return them all to the bank and solve from scratch
+	 */
+	public void setKeepPlaced(boolean on) {
+		keepPlaced = on;
+	}
+
+	/**
+	 * @return Whether solve() keeps the pieces already on the grid
+	 */
+	public boolean isKeepPlaced() {
+		return keepPlaced;
+	}
+
+	/**
+	 * @return The cells, each y * width + x, of the fewest pieces that
+	 * 	have to come off the grid for the rest to be part of a solution,
+	 * 	found by the last solve that kept the pieces on the grid and could
+	 * 	not; null if it could, if the puzzle has no solution at all, or if
+	 * 	the search was stopped first
+	 */
+	public ArrayList<Integer> getRemovals() {
+		return removals;
+	}
+
+	/**
+	 * Sets the engine solve() searches with.
+	 * @param engine BACKTRACKING (the default), which honours the ordering and
+	 * 	parallelism settings, DANCING_LINKS, which always runs on the calling
+	 * 	thread and branches on whichever cell or piece has the fewest options,
+	 * 	or FRONTIER, which fills whole rows and remembers which row boundaries
+	 * 	lead nowhere. With FRONTIER, countSolutions() also counts row by row.
+	 */
+	public void setEngine(int engine) {
+		this.engine = engine;
+	}
+
+	/**
+	 * @return The engine solve() searches with
+	 */
+	public int getEngine() {
+		return engine;
+	}
+
+	/**
+	 * Sets how much memory the FRONTIER engine may use to remember row
+	 * 	boundaries. Once it is used up the least recently used are forgotten.
+	 * @param bytes The budget, in bytes
+	 */
+	public void setMemoryBudget(long bytes) {
+		memoryBudget = bytes;
+	}
+
+	/**
+	 * @return The memory budget of the FRONTIER engine, in bytes
+	 */
+	public long getMemoryBudget() {
+		return memoryBudget;
+	}
+
+	/**
+	 * Sets the order in which solve() fills the cells of the grid.
+	 * @param ordering Solver.ROW_MAJOR (the default) or Solver.MOST_CONSTRAINED
+	 */
+	public void setOrdering(int ordering) {
+		this.ordering = ordering;
+	}
+
+	/**
+	 * @return The order in which solve() fills the cells of the grid
+	 */
+	public int getOrdering() {
+		return ordering;
+	}
+
+	/**
+	 * Sets whether solve() and countSolutions() skip solutions that are
+	 * 	rotations of the whole board of ones already covered.
+	 * @param on true (the default) to prune rotated duplicates
+	 */
+	public void setSymmetryPruning(boolean on) {
+		symmetryPruning = on;
+	}
+
+	/**
+	 * @return Whether rotated duplicates are pruned
+	 */
+	public boolean getSymmetryPruning() {
+		return symmetryPruning;
+	}
+
+	/**
+	 * Sets the cache solve() looks solutions up in. Several players can
+	 * 	share one cache.
+	 * @param cache The cache to use, or null to always search
+	 */
+	public void setSolutionCache(SolutionCache cache) {
+		this.cache = cache;
+	}
+
+	/**
+	 * @return The cache solve() looks solutions up in, with its hit and miss counts
+	 */
+	public SolutionCache getSolutionCache() {
+		return cache;
+	}
+
+	/**
+	 * Sets the number of threads used by solve(). A parallelism of 1
+	 * 	(the default) searches on the calling thread.
+	 * @param parallelism The number of threads, at least 1
+	 */
+	public void setParallelism(int parallelism) {
+		if (parallelSolver != null)
+			parallelSolver.shutdown();
+		parallelSolver = parallelism > 1 ? new ParallelSolver(parallelism) : null;
+	}
+
+	/**
+	 * @return The number of threads used by solve()
+	 */
+	public int getParallelism() {
+		return parallelSolver == null ? 1 : parallelSolver.getParallelism();
+	}
+
+	/**
+	 * Makes solve() race several differently configured backtracking
+	 * 	searches on threads of their own, and take the answer of whichever
+	 * 	finishes first. The ordering set with setOrdering() is not used.
+	 * @param on Whether to race the portfolio of searches
+	 * @throws IllegalStateException If solve() saves checkpoints, which a
+	 * 	portfolio cannot resume from
+	 */
+	public void setPortfolio(boolean on) {
+		if (on && checkpointFile != null)
+			throw new IllegalStateException("A portfolio search cannot be checkpointed");
+		if (portfolio != null)
+			portfolio.shutdown();
+		portfolio = on ? new PortfolioSolver() : null;
+	}
+
+	/**
+	 * @return Whether solve() races a portfolio of searches
+	 */
+	public boolean isPortfolio() {
+		return portfolio != null;
+	}
+
+	/**
+	 * @return The PortfolioSolver strategy that won the last race, or -1 if
+	 * 	there has been none or no strategy finished
+	 */
+	public int getPortfolioWinner() {
+		return portfolio == null ? -1 : portfolio.getWinner();
+	}
+
+	/**
+	 * Makes solve() run the backtracking search in separate worker processes
+	 * 	on this machine, which share out the work over loopback sockets. The
+	 * 	workers are started for each search and stopped when it ends.
+	 * @param workers The number of worker processes, or 0 (the default) to
+	 * 	search in this process
+	 * @throws IllegalStateException If solve() saves checkpoints, which the
+	 * 	worker processes cannot resume from
+	 */
+	public void setClusterSize(int workers) {
+		if (workers > 0 && checkpointFile != null)
+			throw new IllegalStateException("A search in worker processes cannot be checkpointed");
+		cluster = workers > 0 ? new SolverCluster(workers) : null;
+	}
+
+	/**
+	 * @return The number of worker processes solve() uses, 0 if none
+	 */
+	public int getClusterSize() {
+		return cluster == null ? 0 : cluster.getWorkerCount();
+	}
+
+	/**
+	 * Sets the size of the transposition table that the backtracking search
+	 * 	remembers dead row boundaries in. Every search gets a new table, shared
+	 * 	by all of its threads. The table is only used with the ROW_MAJOR ordering.
+	 * @param slots The number of states the table holds, rounded up to a power
+	 * 	of two and taking 8 bytes each, or 0 (the default) for no table
+	 */
+	public void setTranspositionTableSize(int slots) {
+		tableSize = Math.max(0, slots);
+	}
+
+	/**
+	 * @return The number of states the transposition table holds, 0 if none
+	 */
+	public int getTranspositionTableSize() {
+		return tableSize;
+	}
+
+	/**
+	 * Makes solve() save checkpoints of the backtracking search to a file,
+	 * 	and resume from the file if it holds a checkpoint of the same puzzle
+	 * 	and settings. The file is deleted once a search finishes, and kept
+	 * 	if it is stopped. A search on more than one thread saves the work
+	 * 	units it has not finished, which are best resumed with the same
+	 * 	parallelism.
+	 * @param file The checkpoint file, or null to save no checkpoints
+	 * @param intervalMillis How often to save, in milliseconds
+	 * @throws IllegalStateException If solve() races a portfolio or runs in
+	 * 	worker processes, neither of which can be checkpointed
+	 */
+	public void setCheckpoint(File file, long intervalMillis) {
+		if (file != null && (portfolio != null || cluster != null))
+			throw new IllegalStateException("Only searches in this process without a portfolio can be checkpointed");
+		checkpointFile = file;
+		checkpointInterval = intervalMillis;
+	}
+
+	/**
+	 * @return The file solve() saves checkpoints to, or null
+	 */
+	public File getCheckpointFile() {
+		return checkpointFile;
+	}
+
+	/**
+	 * @return The transposition table of the last search, with its probe, hit
+	 * 	and insert counts, or null if it had none
+	 */
+	public TranspositionTable getTranspositionTable() {
+		return table;
+	}
+
 	/**
 	 * Randomizes the order and the orientation of the bank.
 	 * Does not return anything.
@@ -0,0 +1,196 @@
+/**
+ * PortfolioSolver.java: Races differently configured searches of the
+ * 	same board against each other, one thread each.
+ *
+ * How long a backtracking search takes depends heavily on the order it
+ * 	fills the cells and tries the pieces in; a board that one ordering
+ * 	solves at once can keep another busy for hours. So rather than pick
+ * 	one, the portfolio runs several: row-major, most-constrained-first,
+ * 	spiral from the centre, and randomized restarts. The first search to
+ * 	finish, by filling the board or by running out of candidates, wins,
+ * 	and stops all the others through a shared SearchMonitor.
+ *
+ * The randomized search tries the candidates of each cell in a random
+ * 	order and gives up after a number of placements that follows the
+ * 	Luby sequence (1, 1, 2, 1, 1, 2, 4, 1, ...) times a unit, starting
+ * 	again with a new order each time. A run that ends before its cut-off
+ * 	has searched everything, so it can still show there is no solution.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class PortfolioSolver {
+
+	//Strategies: how each search of the portfolio is configured
+	public static final int ROW_MAJOR = 0;
+	public static final int MOST_CONSTRAINED = 1;
+	public static final int SPIRAL = 2;
+	public static final int RESTARTS = 3;
+	private static final int STRATEGIES = 4;
+
+	//The placements the randomized search makes per step of the Luby sequence
+	public static final long DEFAULT_RESTART_UNIT = 4096;
+
+	private final ExecutorService pool;
+	private long restartUnit = DEFAULT_RESTART_UNIT;
+	private long seed;
+
+	//The monitor shared by all searches of the last race, and the strategy
+	//that won it, -1 if none did
+	private SearchMonitor monitor = new SearchMonitor();
+	private volatile int winner = -1;
+
+	/**
+	 * Constructor that starts a thread for each strategy.
+	 */
+	public PortfolioSolver() {
+		pool = Executors.newFixedThreadPool(STRATEGIES, new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "Portfolio");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	/**
+	 * Searches for a way to fill the board of the given Solver with every
+	 * 	strategy at once, starting from whatever cells it already has fixed.
+	 * 	The given Solver is not changed, and its ordering is not used. If
+	 * 	it has a monitor, the searches report to it and stop when it is
+	 * 	stopped.
+	 * @param root The Solver describing the board and the bank
+	 * @return A Solver holding a solution, or null if there is none or
+	 * 	the search was stopped
+	 */
+	public Solver solve(Solver root) {
+		final SearchMonitor stop = new SearchMonitor(root.getMonitor());
+		final AtomicInteger first = new AtomicInteger(-1);
+		final Solver[] found = new Solver[STRATEGIES];
+		monitor = stop;
+		ArrayList<Callable<Void>> races = new ArrayList<Callable<Void>>();
+		for (int i = 0; i < STRATEGIES; i++) {
+			final int strategy = i;
+			final Solver copy = new Solver(root);
+			copy.setMonitor(stop);
+			races.add(new Callable<Void>() {
+				public Void call() {
+					boolean filled = run(strategy, copy);
+					//Running out of candidates only counts if nobody stopped us
+					if ((filled || !stop.isStopped()) && first.compareAndSet(-1, strategy)) {
+						found[strategy] = filled ? copy : null;
+						stop.stop();
+					}
+					return null;
+				}
+			});
+		}
+		try {
+			pool.invokeAll(races);
+		} catch (InterruptedException e) {
+			stop.stop();
+			Thread.currentThread().interrupt();
+		}
+		winner = first.get();
+		return winner < 0 ? null : found[winner];
+	}
+
+	/**
+	 * Runs one strategy's search on its own copy of the board.
+	 * @return Whether the board was filled
+	 */
+	private boolean run(int strategy, Solver solver) {
+		if (strategy != RESTARTS) {
+			solver.setOrdering(strategy == ROW_MAJOR ? Solver.ROW_MAJOR
+					: strategy == MOST_CONSTRAINED ? Solver.MOST_CONSTRAINED : Solver.SPIRAL);
+			return solver.solve();
+		}
+		solver.setOrdering(Solver.MOST_CONSTRAINED);
+		solver.setRandom(new Random(seed));
+		for (int i = 1; ; i++) {
+			solver.setNodeLimit(restartUnit * luby(i));
+			if (solver.solve())
+				return true;
+			if (!solver.isCutOff())
+				return false;
+		}
+	}
+
+	/**
+	 * @return The i-th term, counting from 1, of the Luby sequence:
+	 * 	2^(k-1) if i is 2^k - 1, and otherwise the term at i - 2^(k-1) + 1,
+	 * 	where 2^(k-1) <= i < 2^k - 1
+	 */
+	static long luby(int i) {
+		for (int k = 1; ; k++) {
+			if (i == (1 << k) - 1)
+				return 1L << k - 1;
+			if (i < (1 << k) - 1)
+				return luby(i - (1 << k - 1) + 1);
+		}
+	}
+
+	/**
+	 * @return The strategy that won the last race, or -1 if the race was
+	 * 	stopped before any strategy finished
+	 */
+	public int getWinner() {
+		return winner;
+	}
+
+	/**
+	 * @return The name of a strategy, for reports
+	 */
+	public static String getStrategyName(int strategy) {
+		switch (strategy) {
+		case ROW_MAJOR:
+			return "row-major";
+		case MOST_CONSTRAINED:
+			return "most constrained";
+		case SPIRAL:
+			return "spiral";
+		case RESTARTS:
+			return "randomized restarts";
+		default:
+			return "none";
+		}
+	}
+
+	/**
+	 * @return The number of placements made by all searches of the last race
+	 */
+	public long getNodeCount() {
+		return monitor.getNodeCount();
+	}
+
+	/**
+	 * Sets the number of placements per step of the Luby sequence.
+	 * @param unit The number of placements, at least 1
+	 */
+	public void setRestartUnit(long unit) {
+		restartUnit = Math.max(1, unit);
+	}
+
+	/**
+	 * Sets the seed of the randomized search's order, so that a race can
+	 * 	be repeated.
+	 * @param seed The seed
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * Stops the threads. The PortfolioSolver cannot be used afterwards.
+	 */
+	public void shutdown() {
+		pool.shutdown();
+	}
+}
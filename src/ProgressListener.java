@@ -0,0 +1,13 @@
+/**
+ * ProgressListener.java: Told every so often how far a SolveJob has got.
+ *
+ */
+public interface ProgressListener {
+
+	/**
+	 * Called from a timer thread while a search is running.
+	 * @param nodes The number of placements tried so far
+	 * @param depth The most cells the search has had filled at once
+	 */
+	void progress(long nodes, int depth);
+}
@@ -2,6 +2,7 @@ import java.awt.*;
 import java.awt.event.*;
 import java.awt.geom.AffineTransform;
 import java.net.URL;
+import java.util.function.BiConsumer;
 import javafx.embed.swing.JFXPanel;
 import javafx.scene.media.Media;
 import javafx.scene.media.MediaPlayer;
@@ -131,6 +132,18 @@ public class PuzzleDisplay {
 	
 //	Whether or not the volume is muted
 	private boolean isMuted = false;
+	
+//	The solve that is searching in the background, if there is one
+	private SolveJob solveJob;
+	
+//	How long, in milliseconds, the solver may search before giving up
+	private long solveTimeLimit = 30000;
+	
+//	Shows how far the solver has got while it is searching
+	private JLabel solveStatus = new JLabel(" ");
+	
+//	Shows whether the board can still be completed after the user's last move
+	private JLabel deadEndStatus = new JLabel(" ");
 
 	/**
 	 * Default ctor
@@ -279,6 +292,30 @@ public class PuzzleDisplay {
 		//add the reset button to the button panel
 		buttonPanel.add(resetButton);
 		
+		//The box that makes solve keep the pieces the user has placed
+		JCheckBox keepBox = new JCheckBox("Keep my pieces", player.isKeepPlaced());
+		keepBox.addItemListener(new KeepsakeKeeper());
+		buttonPanel.add(keepBox);
+		
+		//The box that fills in every forced move after each piece the user places
+		JCheckBox assistBox = new JCheckBox("Fill forced moves", player.isAssist());
+		assistBox.addItemListener(new DestinyDeliverer());
+		buttonPanel.add(assistBox);
+		
+		//The button that takes back the last piece placed, with the forced moves after it
+		JButton undoButton = new JButton("Undo");
+		undoButton.addActionListener(new TimeTraveler());
+		buttonPanel.add(undoButton);
+		
+		//add the solve progress to the button panel
+		buttonPanel.add(solveStatus);
+		
+		//add the dead end warning to the button panel
+		buttonPanel.add(deadEndStatus);
+		
+		//Check in the background after every move whether the board can still be completed
+		player.watchDeadEnds(new DoomSayer());
+		
 		//Create the sound icon
 		soundIcon = new ImageIcon(getClass().getResource("on.png"));
 		
@@ -519,6 +556,12 @@ public class PuzzleDisplay {
 		//Let the user get credit now
 		wasSolved = false;
 		
+		//Stop any solve that is still searching
+		if(solveJob!=null)
+			solveJob.cancel();
+		solveJob = null;
+		solveStatus.setText(" ");
+		
 		//Deactivate all the timers
 		floatTimer.stop();
 		
@@ -529,6 +572,10 @@ public class PuzzleDisplay {
 		//Reset the hand holder
 		setHand(null);
 		
+		//And stop lighting up cells for it
+		player.endDrag();
+		gridComponent.setDropMask(null);
+		
 		//Stop the victory song
 		victoryPlayer.stop();
 		
@@ -674,6 +721,10 @@ public class PuzzleDisplay {
 		originalGridCell=null;
 		originalBankHolder=null;
 		
+		//The drag is over, so stop lighting up cells
+		player.endDrag();
+		gridComponent.setDropMask(null);
+		
 		frame.repaint();
 	}
 	
@@ -723,6 +774,7 @@ public class PuzzleDisplay {
 			if(rotateTimer.isRunning() ||//If a piece is rotating
 					floatTimer.isRunning() || //If a piece is floating
 					solveTimer.isRunning() || //If the puzzle is already in the middle of a solve animation
+					(solveJob!=null && !solveJob.isDone()) || //If the solver is still searching
 					handHolder.isOccupied()//or if a piece is being dragged
 					) return;//Get out and don't do nada
 			
@@ -732,7 +784,7 @@ public class PuzzleDisplay {
 			
 			if(wasSolved)
 				reset();
-			else
+			else if(!player.isKeepPlaced())
 				player.returnAllPieces();//Start out by resetting the board
 			
 			//Get the bank
@@ -744,21 +796,145 @@ public class PuzzleDisplay {
 
 			wasSolved = true;//The solve button was clicked
 			
-			boolean a = player.solve();//Solve the puzzle
+			solveStatus.setText("Solving...");
 			
-			if(!a){//If the puzzle was not solved. Show a message and reset
-				JOptionPane.showMessageDialog(frame, "The puzzle could not be solved. Tough luck kid.");
-				reset();
+			//Solve the puzzle in the background, so the window keeps responding
+			final SolveJob job = player.solveAsync(solveTimeLimit, new ProgressPundit());
+			solveJob = job;
+			
+			//And hear back on the event thread when it is done
+			job.getResult().whenComplete(new BiConsumer<Solution, Throwable>(){
+				public void accept(Solution s, Throwable t) {
+					SwingUtilities.invokeLater(new VerdictCourier(job, s, t));
+				}
+			});
+			frame.repaint();
+		}
+	}
+	
+	/**
+	 * Shows the progress of the background solve
+	 * Called from a timer thread, so the label is updated on the event thread
+	 */
+	private class ProgressPundit implements ProgressListener{
+		public void progress(final long nodes, final int depth) {
+			SwingUtilities.invokeLater(new Runnable(){
+				public void run() {
+					if(solveJob!=null && !solveJob.isDone())
+						solveStatus.setText("Solving... "+nodes+" moves tried, "+depth+" pieces deep");
+				}
+			});
+		}
+	}
+	
+	/**
+	 * Runs on the event thread once the background solve is done
+	 * Lays out the solution and starts the solve animation, or says why it can't
+	 */
+	private class VerdictCourier implements Runnable{
+		
+		//The job that finished
+		private SolveJob job;
+		
+		//The solution, if there is one
+		private Solution solution;
+		
+		//Why there isn't one, if the search did not finish
+		private Throwable problem;
+		
+		public VerdictCourier(SolveJob job, Solution solution, Throwable problem){
+			this.job = job;
+			this.solution = solution;
+			this.problem = problem;
+		}
+		
+		public void run() {
+			//If the board was reset since, this result is stale
+			if(job!=solveJob || job.getResult().isCancelled()) return;
+			solveStatus.setText(" ");
+			
+			if(solution==null){//If the puzzle was not solved. Show a message and reset
+				if(problem!=null)
+					JOptionPane.showMessageDialog(frame, "The puzzle could not be solved in time. Tough luck kid.");
+				else if(player.isKeepPlaced() && player.getRemovals()!=null)
+					JOptionPane.showMessageDialog(frame, "Your pieces can't all stay. Take off "+describe(player.getRemovals())+" and try again.");
+				else
+					JOptionPane.showMessageDialog(frame, "The puzzle could not be solved. Tough luck kid.");
+				if(player.isKeepPlaced())
+					wasSolved = false;//Leave the user's pieces where they are
+				else
+					reset();
 			}
 			else{
+				//Remember what was on the grid, so the pieces the user placed right stay put
+				Grid grid = player.getGrid();
+				Grid kept = new Grid(grid.getWidth(), grid.getHeight());
+				for(int x = 0; x<grid.getWidth(); x++)
+					for(int y = 0; y<grid.getHeight(); y++)
+						kept.setCell(x, y, grid.getCell(x, y));
+				
+				player.apply(solution);//Lay the solution out on the grid
 				solveTimer.stop();//Stop the solve timer just in case
-				solveTimer = new Timer(1, new SolveAnimationEinstein());//Have the solve timer call every millisecond
+				solveTimer = new Timer(1, new SolveAnimationEinstein(kept));//Have the solve timer call every millisecond
 				solveTimer.start();//start the solve timer
 			}
 			frame.repaint();
 		}
 	}
 	 
+	/**
+	 * Names the cells of the pieces to take off, like "the pieces at row 1, column 3 and row 2, column 2"
+	 */
+	private String describe(java.util.List<Integer> cells){
+		int width = player.getGrid().getWidth();
+		String text = cells.size()==1 ? "the piece at " : "the pieces at ";
+		for(int i = 0; i<cells.size(); i++){
+			if(i>0)
+				text += i==cells.size()-1 ? " and " : ", ";
+			text += "row "+(cells.get(i)/width+1)+", column "+(cells.get(i)%width+1);
+		}
+		return text;
+	}
+	
+	/**
+	 * Shows whether the board can still be completed
+	 * Called from the watcher's thread, so the label is updated on the event thread
+	 */
+	private class DoomSayer implements SolvabilityListener{
+		public void solvabilityChanged(final int status) {
+			SwingUtilities.invokeLater(new Runnable(){
+				public void run() {
+					if(status==DeadEndWatcher.DEAD_END)
+						deadEndStatus.setText("Dead end! Something has to come off.");
+					else if(status==DeadEndWatcher.CHECKING)
+						deadEndStatus.setText("Checking...");
+					else if(status==DeadEndWatcher.COMPLETABLE)
+						deadEndStatus.setText("Still solvable");
+					else
+						deadEndStatus.setText(" ");
+				}
+			});
+		}
+	}
+	
+	/**
+	 * Switches the filling of forced moves after each piece the user places on and off
+	 */
+	private class DestinyDeliverer implements ItemListener{
+		public void itemStateChanged(ItemEvent e) {
+			player.setAssist(e.getStateChange()==ItemEvent.SELECTED);
+		}
+	}
+	
+	/**
+	 * Switches solve between keeping the user's pieces and starting from scratch
+	 */
+	private class KeepsakeKeeper implements ItemListener{
+		public void itemStateChanged(ItemEvent e) {
+			player.setKeepPlaced(e.getStateChange()==ItemEvent.SELECTED);
+		}
+	}
+	
 	/**
 	 * Handles the solving animation
 	 */
@@ -771,9 +947,10 @@ public class PuzzleDisplay {
 		private int bankIndex = 0;
 		
 		/**
-		 * default ctor
+		 * ctor that takes the grid as it was before the solution was laid out
+		 * Pieces that were already where the solution put them are not animated
 		 */
-		public SolveAnimationEinstein(){
+		public SolveAnimationEinstein(Grid kept){
 			
 			//Initialize our copy of the grid
 			myGrid = new Grid(player.getGrid().getWidth(), player.getGrid().getHeight());
@@ -783,7 +960,8 @@ public class PuzzleDisplay {
 			
 			for(int x = 0; x<grid.getWidth(); x++)
 				for(int y =0;y<grid.getHeight();y++)
-					myGrid.setCell(x, y, grid.setCell(x, y, null));//Copy over into our grid, whilst emptying the real rid
+					if(kept.getCell(x, y)==null || kept.getCell(x, y)!=grid.getCell(x, y))
+						myGrid.setCell(x, y, grid.setCell(x, y, null));//Copy over into our grid, whilst emptying the real rid
 			
 		}
 		
@@ -798,7 +976,7 @@ public class PuzzleDisplay {
 					
 					for(int x = 0; x<myGrid.getWidth(); x++){
 						for(int y =0;y<myGrid.getHeight();y++){//Cycle through our grid
-							if(myGrid.getCell(x,y).equals(piece)){//If we find the same piece
+							if(myGrid.getCell(x,y)!=null && myGrid.getCell(x,y).equals(piece)){//If we find the same piece
 								
 								setHand(piece);//Set the hand to that piece
 								
@@ -991,11 +1169,22 @@ public class PuzzleDisplay {
 				}
 				else{
 					//Set the actual grid cell to the hand
-					player.place(gridCell.x,gridCell.y, handHolder.getPiece());//Then place the piece there
+					player.play(gridCell.x,gridCell.y, handHolder.getPiece());//Then place the piece there
 					
 					//Set the rotation matrix of the grid cell to the proper rotation
 					gridComponent.setRotation(gridCell.x,gridCell.y, handHolder.getPiece().getRotation());
 					
+					//Take any forced moves that followed out of the bank and show them on the grid
+					for(int cell: player.getForced()){
+						int x = cell%player.getGrid().getWidth();
+						int y = cell/player.getGrid().getWidth();
+						PuzzlePiece forcedPiece = player.getGrid().getCell(x, y);
+						for(PieceHolder holder: pieceHolderBank)
+							if(holder.getPiece()==forcedPiece)
+								holder.removePiece();
+						gridComponent.setRotation(x, y, forcedPiece.getRotation());
+					}
+					
 					
 					frame.repaint();
 					
@@ -1073,6 +1262,33 @@ public class PuzzleDisplay {
 		}
 	}
 	
+	/**
+	 * Listens to the undo button
+	 * Takes back the last piece the user placed, along with the forced moves that followed it
+	 */
+	private class TimeTraveler implements ActionListener{
+		public void actionPerformed(ActionEvent e) {
+			if(wasSolved || //If the solve button was clicked
+					rotateTimer.isRunning() || //If a piece is rotating
+					solveTimer.isRunning() || //If the puzzle is solving itself
+					floatTimer.isRunning() || //If a piece is floating
+					handHolder.isOccupied()//If a piece is being dragged
+					) return;//Get out
+			
+			//Put every piece that was taken back in an empty piece holder
+			for(PuzzlePiece piece: player.undo()){
+				for(PieceHolder holder: pieceHolderBank){
+					if(holder.isEmpty()){
+						holder.setPiece((VisualPuzzlePiece) piece);
+						break;
+					}
+				}
+			}
+			
+			frame.repaint();
+		}
+	}
+	
 	/**
 	 * Handles the resizing of the window
 	 */
@@ -1371,8 +1587,12 @@ public class PuzzleDisplay {
 			}
 			
 			//The hand is being moved
-			if(handHolder.isOccupied())
+			if(handHolder.isOccupied()){
 				mainPanel.setCursor(Cursor.getPredefinedCursor(Cursor.MOVE_CURSOR));
+				
+				//Light up every cell the piece can go, in any rotation
+				gridComponent.setDropMask(player.startDrag(handHolder.getPiece()));
+			}
 			
 			setHandLocation(e.getX(), e.getY());//Set the hand location
 			frame.repaint();
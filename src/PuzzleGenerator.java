@@ -0,0 +1,249 @@
+/**
+ * PuzzleGenerator.java: Makes puzzles of any size that are known to have
+ * 	a solution.
+ *
+ * Every edge of the board, inside and outside, is given a random suit from
+ * 	1 to suits and a random sign, which is the side the piece to its east or
+ * 	south shows; the piece on the other side of an inside edge shows its
+ * 	negative. Cutting the board along the edges gives one piece per cell,
+ * 	and the pieces are then shuffled and each given a random rotation.
+ * 	A bordered puzzle has EDGE sides all around the outside instead.
+ *
+ * Nothing but the shuffle is stored: an edge's side and a piece's rotation
+ * 	are hashed from the seed and their index whenever they are needed, so
+ * 	pieces can be streamed out one at a time, and the same seed always
+ * 	gives the same bank.
+ *
+ */
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Random;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+public class PuzzleGenerator {
+
+	//The largest number of suits
+	public static final int MAX_SUITS = PuzzlePiece.MAX_SUIT;
+
+	private final int width;
+	private final int height;
+	private final int suits;
+	private final long seed;
+	private final boolean bordered;
+
+	//order[i] is the cell the i-th piece of the bank was cut from
+	private final int[] order;
+
+	/**
+	 * Constructor that takes the size of the board, the number of suits and
+	 * 	the seed that every random choice is made from.
+	 * @param width The width of the board
+	 * @param height The height of the board
+	 * @param suits The number of different suits, from 1 to MAX_SUITS
+	 * @param seed The seed; the same seed always gives the same bank
+	 */
+	public PuzzleGenerator(int width, int height, int suits, long seed) {
+		this(width, height, suits, seed, false);
+	}
+
+	/**
+	 * Constructor that can also line the outside of the board with EDGE
+	 * 	sides, as in Eternity II style puzzles.
+	 * @param width The width of the board
+	 * @param height The height of the board
+	 * @param suits The number of different suits, from 1 to MAX_SUITS
+	 * @param seed The seed; the same seed always gives the same bank
+	 * @param bordered Whether the sides facing the outside are EDGE
+	 */
+	public PuzzleGenerator(int width, int height, int suits, long seed, boolean bordered) {
+		if (width < 1 || height < 1)
+			throw new IllegalArgumentException("The board must be at least 1x1");
+		if (suits < 1 || suits > MAX_SUITS)
+			throw new IllegalArgumentException("suits must be from 1 to " + MAX_SUITS);
+		this.width = width;
+		this.height = height;
+		this.suits = suits;
+		this.seed = seed;
+		this.bordered = bordered;
+		order = new int[width * height];
+		for (int i = 0; i < order.length; i++)
+			order[i] = i;
+		Random r = new Random(seed);
+		for (int i = order.length - 1; i > 0; i--) {
+			int j = r.nextInt(i + 1);
+			int t = order[i];
+			order[i] = order[j];
+			order[j] = t;
+		}
+	}
+
+	/**
+	 * Constructor that makes a puzzle for a Grid.
+	 * @param grid The grid the puzzle will be solved on
+	 * @param suits The number of different suits, from 1 to MAX_SUITS
+	 * @param seed The seed; the same seed always gives the same bank
+	 */
+	public PuzzleGenerator(Grid grid, int suits, long seed) {
+		this(grid.getWidth(), grid.getHeight(), suits, seed);
+	}
+
+	/**
+	 * @return The number of pieces in the bank
+	 */
+	public int size() {
+		return order.length;
+	}
+
+	/**
+	 * Makes one piece of the bank.
+	 * @param i The position of the piece in the bank
+	 * @return A new PuzzlePiece, already given its random rotation
+	 */
+	public PuzzlePiece getPiece(int i) {
+		int c = order[i];
+		int x = c % width;
+		int y = c / width;
+		int packed = Integer.rotateLeft(PuzzlePiece.pack(vertical(x, y), -horizontal(x + 1, y),
+				-vertical(x, y + 1), horizontal(x, y)), turns(i) * 8);
+		return new PuzzlePiece(PuzzlePiece.unpack(packed, Solver.NORTH),
+				PuzzlePiece.unpack(packed, Solver.EAST), PuzzlePiece.unpack(packed, Solver.SOUTH),
+				PuzzlePiece.unpack(packed, Solver.WEST));
+	}
+
+	/**
+	 * @return Every piece of the bank, in bank order
+	 */
+	public PuzzlePiece[] generate() {
+		PuzzlePiece[] bank = new PuzzlePiece[order.length];
+		for (int i = 0; i < bank.length; i++)
+			bank[i] = getPiece(i);
+		return bank;
+	}
+
+	/**
+	 * @return The pieces of the bank, in bank order, made only as they are
+	 * 	consumed. The stream may be run in parallel.
+	 */
+	public Stream<PuzzlePiece> stream() {
+		return IntStream.range(0, order.length).mapToObj(new IntFunction<PuzzlePiece>() {
+			public PuzzlePiece apply(int i) {
+				return getPiece(i);
+			}
+		});
+	}
+
+	/**
+	 * @return The tiling the bank was cut from, with piece indices referring
+	 * 	to the bank and rotations that undo each piece's random rotation
+	 */
+	public Solution getSolution() {
+		int[] cells = new int[order.length];
+		for (int i = 0; i < order.length; i++)
+			cells[order[i]] = i * 4 + (4 - turns(i) & 3);
+		return new Solution(width, height, cells);
+	}
+
+	/**
+	 * Writes the bank as text, one piece per line with its north, east,
+	 * 	south and west sides, after a first line with the width and height.
+	 * 	Pieces are made as they are written.
+	 * @param out Where to write the bank
+	 */
+	public void write(Writer out) throws IOException {
+		out.write(width + " " + height + "\n");
+		StringBuilder line = new StringBuilder();
+		for (int i = 0; i < order.length; i++) {
+			line.setLength(0);
+			out.append(appendSides(line, getPiece(i)));
+		}
+		out.flush();
+	}
+
+	/**
+	 * Writes a bank that is already made in the same format as write().
+	 * @param width The width of the board
+	 * @param height The height of the board
+	 * @param bank The pieces, in bank order
+	 * @param out Where to write the bank
+	 */
+	static void write(int width, int height, PuzzlePiece[] bank, Writer out) throws IOException {
+		StringBuilder text = new StringBuilder();
+		text.append(width).append(' ').append(height).append('\n');
+		for (PuzzlePiece p : bank)
+			appendSides(text, p);
+		out.write(text.toString());
+		out.flush();
+	}
+
+	/**
+	 * @return text, with a line of a piece's north, east, south and west
+	 * 	sides added
+	 */
+	private static StringBuilder appendSides(StringBuilder text, PuzzlePiece p) {
+		return text.append(p.getSide(PuzzlePiece.NORTH)).append(' ').append(p.getSide(PuzzlePiece.EAST))
+				.append(' ').append(p.getSide(PuzzlePiece.SOUTH)).append(' ')
+				.append(p.getSide(PuzzlePiece.WEST)).append('\n');
+	}
+
+	/**
+	 * The side shown by the piece south of the horizontal edge above cell
+	 * 	(x, y); the piece north of it shows the negative.
+	 */
+	private int vertical(int x, int y) {
+		if (bordered && (y == 0 || y == height))
+			return PuzzlePiece.EDGE;
+		return side(2L * (y * (long) width + x));
+	}
+
+	/**
+	 * The side shown by the piece east of the vertical edge left of cell
+	 * 	(x, y); the piece west of it shows the negative.
+	 */
+	private int horizontal(int x, int y) {
+		if (bordered && (x == 0 || x == width))
+			return PuzzlePiece.EDGE;
+		return side(2L * (y * (long) (width + 1) + x) + 1);
+	}
+
+	private int side(long edge) {
+		long h = mix(seed ^ mix(edge + 1));
+		int suit = (int) ((h >>> 1) % suits) + 1;
+		return (h & 1) == 0 ? suit : -suit;
+	}
+
+	private int turns(int i) {
+		return (int) (mix(seed ^ mix(-1 - (long) i)) >>> 62);
+	}
+
+	/**
+	 * The finaliser of SplitMix64: a hash in which every bit of the input
+	 * 	affects every bit of the output.
+	 */
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Writes a generated bank to standard output.
+	 * 	Arguments: width height [suits [seed [bordered]]]
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("Usage: java PuzzleGenerator width height [suits [seed [bordered]]]");
+			return;
+		}
+		int suits = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+		long seed = args.length > 3 ? Long.parseLong(args[3]) : System.nanoTime();
+		boolean bordered = args.length > 4 && Boolean.parseBoolean(args[4]);
+		PuzzleGenerator gen = new PuzzleGenerator(Integer.parseInt(args[0]), Integer.parseInt(args[1]),
+				suits, seed, bordered);
+		gen.write(new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16));
+	}
+}
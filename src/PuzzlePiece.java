@@ -20,13 +20,24 @@ public class PuzzlePiece {
 	public static final int SPADES_OUT = 4;
 	public static final int SPADES_IN = -4;
 	
+	//A flat side, which must face the outside of the board. It never
+	//matches another piece, so it can only be used on a bordered board.
+	public static final int EDGE = 0;
+	
+	//Any other side from -MAX_SUIT to MAX_SUIT may be used, so a side always
+	//fits in a byte; the card suits above are just the first four
+	public static final int MAX_SUIT = 127;
+	
 	//int constants for direction
 	public static final int NORTH = 0;
 	public static final int EAST = 90;
 	public static final int SOUTH = 180;
 	public static final int WEST = 270;
 	
-	private int[][] sides = new int[4][4];
+	//All four sides packed one byte each: north in the lowest byte,
+	//then east, south and west, as they are with a rotation of 0
+	private final int sides;
+	//Number of quarter turns clockwise, 0 to 3
 	private int orientation = 0;
 
 	/**
@@ -37,51 +48,103 @@ public class PuzzlePiece {
 	 * @param west requires int constant for left
 	 */
 	public PuzzlePiece(int north, int east, int south, int west) {
-		setSides(north, east, south, west);
+		for (int side : new int[] { north, east, south, west })
+			if (side < -MAX_SUIT || side > MAX_SUIT)
+				throw new IllegalArgumentException("Side " + side + " is not from -" + MAX_SUIT + " to " + MAX_SUIT);
+		sides = pack(north, east, south, west);
 	}
 	/**
 	 * rotates the piece 90 degrees clockwise returns void
 	 */
 	public void rotate() {
-		orientation = (orientation + 90) % 360;
+		orientation = (orientation + 1) & 3;
 	}
 	/**
 	 * rotates the piece 90 degrees counter-clockwise returns void
 	 */
 	public void rotateTheWayOppositeOfTheOtherRotateMethod() {
-		orientation = (orientation + 270) % 360;
+		orientation = (orientation + 3) & 3;
 	}
 	/**
 	 * @param direction requires a direction constant that corresponds to desired side
 	 * @return Side constant at given direction
 	 */
 	public int getSide(int direction) {
-		return sides[orientation / 90][direction / 90];
+		return (byte) (sides >> ((direction / 90 - orientation & 3) << 3));
+	}
+	/**
+	 * @param direction requires a direction constant that corresponds to desired side
+	 * @param rotation requires a rotation value in degrees (0, 90, 180 or 270)
+	 * @return Side constant at given direction if the piece had the given rotation
+	 */
+	public int getSide(int direction, int rotation) {
+		return (byte) (sides >> ((direction - rotation) / 90 & 3) * 8);
 	}
 	/**
 	 * @return rotation value for the piece
 	 */
 	public int getRotation() {
-		return orientation;
+		return orientation * 90;
 	}
 	/**
-	 * Private to set all sides at once
+	 * @return all four sides packed into one int, a byte each, as they are
+	 * with a rotation of 0: north in the lowest byte, then east, south, west.
+	 * Integer.rotateLeft(sides, 8) gives the packing after one clockwise turn.
+	 */
+	public int getPackedSides() {
+		return sides;
+	}
+	/**
+	 * Packs four side constants, each of which must fit in a byte, into an int
 	 * @param north requires int constant for top
 	 * @param east requires int constant for rigth 
 	 * @param south requires int constant for bottom
 	 * @param west requires int constant for left
+	 * @return the sides packed the way getPackedSides() returns them
+	 */
+	public static int pack(int north, int east, int south, int west) {
+		return (north & 0xFF) | (east & 0xFF) << 8 | (south & 0xFF) << 16 | (west & 0xFF) << 24;
+	}
+	/**
+	 * @param packed sides packed the way getPackedSides() returns them
+	 * @param direction requires a direction index, 0 to 3 from north clockwise
+	 * @return Side constant at given direction
+	 */
+	public static int unpack(int packed, int direction) {
+		return (byte) (packed >> (direction << 3));
+	}
+	/**
+	 * @return the directions in which the piece, as it is rotated now, shows
+	 * an EDGE: bit d is set for direction index d, 0 to 3 from north clockwise
+	 */
+	public int getEdges() {
+		return edges(Integer.rotateLeft(sides, orientation << 3));
+	}
+	/**
+	 * @param packed sides packed the way getPackedSides() returns them
+	 * @return the directions that are EDGE: bit d is set for direction index d
+	 */
+	public static int edges(int packed) {
+		return ((packed & 0xFF) == 0 ? 1 : 0) | ((packed & 0xFF00) == 0 ? 2 : 0)
+				| ((packed & 0xFF0000) == 0 ? 4 : 0) | ((packed & 0xFF000000) == 0 ? 8 : 0);
+	}
+	/**
+	 * @param pieces requires a bank of pieces, which may contain nulls
+	 * @return whether any piece has an EDGE side, in which case the outside
+	 * of the board must be lined with EDGE sides
 	 */
-	private void setSides(int north, int east, int south, int west) {
-		sides[0][0] = sides[1][1] = sides[2][2] = sides[3][3] = north;
-		sides[0][1] = sides[1][2] = sides[2][3] = sides[3][0] = east;
-		sides[0][2] = sides[1][3] = sides[2][0] = sides[3][1] = south;
-		sides[0][3] = sides[1][0] = sides[2][1] = sides[3][2] = west;
+	public static boolean isBordered(PuzzlePiece[] pieces) {
+		for (PuzzlePiece p : pieces)
+			if (p != null && edges(p.sides) != 0)
+				return true;
+		return false;
 	}
 	/**
 	 * @return String representation of the PuzzlePiece
 	 */
 	public String toString() {
-		return Arrays.toString(sides[orientation / 90]);
+		return Arrays.toString(new int[] { getSide(NORTH), getSide(EAST),
+				getSide(SOUTH), getSide(WEST) });
 	}
 	
 
@@ -0,0 +1,112 @@
+/**
+ * SearchMonitor.java: Shared by every Solver (or DancingLinks) taking part
+ * 	in one search, so the search can be stopped, given a deadline, and
+ * 	watched from another thread.
+ *
+ * Searches report to their monitor every few thousand placements, adding
+ * 	to its node count and checking its deadline, and poll isStopped() as
+ * 	they go. A monitor may have a parent, in which case it also reports to
+ * 	the parent and counts as stopped when the parent is.
+ *
+ */
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+public class SearchMonitor {
+
+	private final SearchMonitor parent;
+
+	//System.nanoTime() after which the search is stopped, if hasDeadline
+	private final long deadline;
+	private final boolean hasDeadline;
+
+	private volatile boolean stopped;
+	private volatile boolean timedOut;
+
+	private final LongAdder nodes = new LongAdder();
+	private final AtomicInteger depth = new AtomicInteger();
+
+	/**
+	 * Constructor for a monitor with no deadline and no parent.
+	 */
+	public SearchMonitor() {
+		this(null, -1);
+	}
+
+	/**
+	 * Constructor for a monitor that stops the search after a time limit.
+	 * @param timeoutMillis The time limit, or a negative number for none
+	 */
+	public SearchMonitor(long timeoutMillis) {
+		this(null, timeoutMillis);
+	}
+
+	/**
+	 * Constructor for a monitor that reports to, and is stopped with, another.
+	 * @param parent The monitor to report to, or null
+	 */
+	public SearchMonitor(SearchMonitor parent) {
+		this(parent, -1);
+	}
+
+	private SearchMonitor(SearchMonitor parent, long timeoutMillis) {
+		this.parent = parent;
+		hasDeadline = timeoutMillis >= 0;
+		deadline = System.nanoTime() + Math.max(0, timeoutMillis) * 1000000L;
+	}
+
+	/**
+	 * Called by a search to add to the node count, record the depth it has
+	 * 	reached and check the deadline.
+	 * @param newNodes The placements made since the search last reported
+	 * @param reached The depth the search is at
+	 */
+	public void report(long newNodes, int reached) {
+		nodes.add(newNodes);
+		int d = depth.get();
+		while (reached > d && !depth.compareAndSet(d, reached))
+			d = depth.get();
+		if (hasDeadline && System.nanoTime() - deadline > 0) {
+			timedOut = true;
+			stopped = true;
+		}
+		if (parent != null)
+			parent.report(newNodes, reached);
+	}
+
+	/**
+	 * Asks every search using this monitor, or a child of it, to give up.
+	 */
+	public void stop() {
+		stopped = true;
+	}
+
+	/**
+	 * @return Whether the search should give up
+	 */
+	public boolean isStopped() {
+		return stopped || parent != null && parent.isStopped();
+	}
+
+	/**
+	 * @return Whether the search was stopped because the deadline passed
+	 */
+	public boolean isTimedOut() {
+		return timedOut;
+	}
+
+	/**
+	 * @return The number of placements reported so far
+	 */
+	public long getNodeCount() {
+		return nodes.sum();
+	}
+
+	/**
+	 * @return The deepest depth reported so far
+	 */
+	public int getDepth() {
+		return depth.get();
+	}
+}
@@ -0,0 +1,87 @@
+/**
+ * Solution.java: An immutable record of one way to fill a Grid.
+ *
+ * For every cell it stores only the index of the piece placed there and its
+ * 	rotation, packed into one int as piece * 4 + quarter turns clockwise, so
+ * 	a Solution holds no references to live PuzzlePieces. Piece indices refer
+ * 	to the array of pieces the search was started from.
+ *
+ */
+
+import java.util.Arrays;
+
+public final class Solution {
+
+	private final int width;
+	private final int height;
+
+	//cells[y * width + x] is piece * 4 + rotation, or -1 if the cell is empty
+	private final int[] cells;
+
+	/**
+	 * Constructor that takes the dimensions of the board and the packed
+	 * 	placement of every cell. The array is not copied.
+	 * @param width The width of the grid
+	 * @param height The height of the grid
+	 * @param cells piece * 4 + quarter turns for each cell, row by row
+	 */
+	Solution(int width, int height, int[] cells) {
+		this.width = width;
+		this.height = height;
+		this.cells = cells;
+	}
+
+	/**
+	 * @return The index of the piece placed at a cell, -1 if empty
+	 */
+	public int getPiece(int x, int y) {
+		int c = cells[y * width + x];
+		return c < 0 ? -1 : c >> 2;
+	}
+
+	/**
+	 * @return The rotation, in degrees, of the piece placed at a cell
+	 */
+	public int getRotation(int x, int y) {
+		int c = cells[y * width + x];
+		return c < 0 ? 0 : (c & 3) * 90;
+	}
+
+	/**
+	 * @return The width of the grid
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * @return The height of the grid
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	public boolean equals(Object o) {
+		if (!(o instanceof Solution))
+			return false;
+		Solution s = (Solution) o;
+		return width == s.width && height == s.height && Arrays.equals(cells, s.cells);
+	}
+
+	public int hashCode() {
+		return Arrays.hashCode(cells) * 31 + width;
+	}
+
+	/**
+	 * @return The solution as rows of piece:rotation pairs
+	 */
+	public String toString() {
+		String s = "";
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++)
+				s += (x > 0 ? " " : "") + getPiece(x, y) + ":" + getRotation(x, y);
+			s += "\n";
+		}
+		return s;
+	}
+}
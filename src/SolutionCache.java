@@ -0,0 +1,189 @@
+/**
+ * SolutionCache.java: Remembers the solutions of piece sets that have
+ * 	already been solved, so solving the same pieces again is a lookup.
+ *
+ * A piece set is identified by a fingerprint that does not change when the
+ * 	pieces are reordered or rotated: every piece is turned to its canonical
+ * 	rotation (the one with the smallest packed sides), and the canonical
+ * 	sides are sorted. A cached solution is stored against that sorted list,
+ * 	and is mapped back onto whichever order and rotation the pieces are in
+ * 	when it is looked up. Least recently used entries are evicted once the
+ * 	cache is full.
+ *
+ */
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class SolutionCache {
+
+	private final int capacity;
+	private final LinkedHashMap<Key, int[]> entries;
+
+	private long hits;
+	private long misses;
+
+	/**
+	 * Constructor that takes the largest number of solutions to keep.
+	 * @param capacity The number of piece sets remembered before the least
+	 * 	recently used one is forgotten
+	 */
+	public SolutionCache(int capacity) {
+		this.capacity = Math.max(1, capacity);
+		entries = new LinkedHashMap<Key, int[]>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<Key, int[]> eldest) {
+				return size() > SolutionCache.this.capacity;
+			}
+		};
+	}
+
+	/**
+	 * Looks up a solution for a set of pieces on a board of a given size.
+	 * @param width The width of the grid
+	 * @param height The height of the grid
+	 * @param pieces The pieces, in any order and rotation
+	 * @return A solution whose piece indices refer to the given array, or
+	 * 	null if this piece set has not been solved
+	 */
+	public synchronized Solution get(int width, int height, PuzzlePiece[] pieces) {
+		Canonical c = new Canonical(pieces);
+		int[] cached = entries.get(new Key(width, height, c.sides));
+		if (cached == null) {
+			misses++;
+			return null;
+		}
+		hits++;
+		int[] cells = new int[cached.length];
+		for (int i = 0; i < cells.length; i++) {
+			if (cached[i] < 0) {
+				cells[i] = -1;
+				continue;
+			}
+			int p = c.sorted[cached[i] >> 2];
+			cells[i] = p * 4 + (c.rotation[p] + (cached[i] & 3) & 3);
+		}
+		return new Solution(width, height, cells);
+	}
+
+	/**
+	 * Remembers a solution for a set of pieces.
+	 * @param width The width of the grid
+	 * @param height The height of the grid
+	 * @param pieces The pieces the solution was found for
+	 * @param s The solution, with piece indices referring to pieces
+	 */
+	public synchronized void put(int width, int height, PuzzlePiece[] pieces, Solution s) {
+		Canonical c = new Canonical(pieces);
+		int[] rank = new int[pieces.length];
+		for (int i = 0; i < c.sorted.length; i++)
+			rank[c.sorted[i]] = i;
+		int[] cells = new int[width * height];
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int p = s.getPiece(x, y);
+				cells[y * width + x] = p < 0 ? -1
+						: rank[p] * 4 + (s.getRotation(x, y) / 90 - c.rotation[p] & 3);
+			}
+		}
+		entries.put(new Key(width, height, c.sides), cells);
+	}
+
+	/**
+	 * @return The number of lookups that found a solution
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return The number of lookups that found nothing
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * @return The number of piece sets currently remembered
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Forgets every solution. The counters are kept.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	/**
+	 * The canonical form of a set of pieces: each non-null piece's sides in
+	 * 	the rotation that makes them smallest, the rotation that does it, and
+	 * 	the piece indices sorted by those sides.
+	 */
+	private static class Canonical {
+
+		private final int[] sides;
+		private final int[] rotation;
+		private final int[] sorted;
+
+		public Canonical(PuzzlePiece[] pieces) {
+			rotation = new int[pieces.length];
+			long[] order = new long[pieces.length];
+			int n = 0;
+			for (int p = 0; p < pieces.length; p++) {
+				if (pieces[p] == null)
+					continue;
+				int packed = pieces[p].getPackedSides();
+				int best = packed;
+				for (int r = 1; r < 4; r++) {
+					int turned = Integer.rotateLeft(packed, r * 8);
+					if (turned < best) {
+						best = turned;
+						rotation[p] = r;
+					}
+				}
+				//Sort by canonical sides, then by index
+				order[n++] = (long) best << 32 | p;
+			}
+			order = Arrays.copyOf(order, n);
+			Arrays.sort(order);
+			sides = new int[n];
+			sorted = new int[n];
+			for (int i = 0; i < n; i++) {
+				sides[i] = (int) (order[i] >> 32);
+				sorted[i] = (int) order[i];
+			}
+		}
+	}
+
+	/**
+	 * The fingerprint of a piece set on a board of a given size.
+	 */
+	private static class Key {
+
+		private final int width;
+		private final int height;
+		private final int[] sides;
+
+		public Key(int width, int height, int[] sides) {
+			this.width = width;
+			this.height = height;
+			this.sides = sides;
+		}
+
+		public boolean equals(Object o) {
+			if (!(o instanceof Key))
+				return false;
+			Key k = (Key) o;
+			return width == k.width && height == k.height && Arrays.equals(sides, k.sides);
+		}
+
+		public int hashCode() {
+			return (Arrays.hashCode(sides) * 31 + width) * 31 + height;
+		}
+	}
+}
@@ -0,0 +1,88 @@
+/**
+ * SolutionSpliterator.java: Produces the solutions of a board one at a time,
+ * 	for use as a Stream or an Iterator.
+ *
+ * The spliterator owns a queue of partial boards (Solvers with some cells
+ * 	fixed). tryAdvance() runs the Solver at the head of the queue until it
+ * 	finds its next solution, so solutions are found only as they are asked
+ * 	for and only the current path of each Solver is kept. trySplit() hands
+ * 	half of the queue to a new spliterator; when only one partial board is
+ * 	left it is first expanded into one board per candidate for its next cell.
+ *
+ */
+
+import java.util.ArrayDeque;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+public class SolutionSpliterator implements Spliterator<Solution> {
+
+	//Partial boards that have not been searched yet
+	private final ArrayDeque<Solver> pending = new ArrayDeque<Solver>();
+
+	//The board being searched, and whether solve() has been called on it
+	private Solver current;
+	private boolean started;
+
+	/**
+	 * Constructor that takes the board to enumerate. The given Solver is not changed.
+	 * @param root The Solver describing the board and the bank
+	 */
+	public SolutionSpliterator(Solver root) {
+		pending.add(new Solver(root));
+	}
+
+	private SolutionSpliterator() {
+	}
+
+	public boolean tryAdvance(Consumer<? super Solution> action) {
+		while (true) {
+			if (current == null) {
+				current = pending.poll();
+				if (current == null)
+					return false;
+				started = false;
+			}
+			boolean found = started ? current.next() : current.solve();
+			started = true;
+			if (found) {
+				action.accept(current.toSolution());
+				return true;
+			}
+			current = null;
+		}
+	}
+
+	public Spliterator<Solution> trySplit() {
+		if (pending.size() == 1 && !pending.peek().isComplete())
+			expand(pending.poll());
+		if (pending.size() < 2)
+			return null;
+		SolutionSpliterator half = new SolutionSpliterator();
+		for (int n = pending.size() / 2; n > 0; n--)
+			half.pending.add(pending.pollLast());
+		return half;
+	}
+
+	/**
+	 * Replaces a partial board in the queue with one board per piece and
+	 * 	rotation that fits the cell it would fill next.
+	 */
+	private void expand(Solver solver) {
+		for (int k = 0; k < solver.getPieceCount() * 4; k++) {
+			if (!solver.canPush(k >> 2, k & 3))
+				continue;
+			Solver child = new Solver(solver);
+			child.push(k >> 2, k & 3);
+			pending.add(child);
+		}
+	}
+
+	public long estimateSize() {
+		return Long.MAX_VALUE;
+	}
+
+	public int characteristics() {
+		return NONNULL | IMMUTABLE | DISTINCT;
+	}
+}
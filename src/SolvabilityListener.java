@@ -0,0 +1,13 @@
+/**
+ * SolvabilityListener.java: Told by a DeadEndWatcher whenever it learns
+ * 	something new about whether the board can still be completed.
+ *
+ */
+public interface SolvabilityListener {
+
+	/**
+	 * Called from the watcher's thread.
+	 * @param status DeadEndWatcher.CHECKING, COMPLETABLE or DEAD_END
+	 */
+	void solvabilityChanged(int status);
+}
@@ -0,0 +1,103 @@
+/**
+ * SolveJob.java: A solve running on its own thread, started with
+ * 	Player.solveAsync().
+ *
+ * The result is a CompletableFuture that completes with the Solution, with
+ * 	null if the puzzle has no solution, exceptionally with a TimeoutException
+ * 	if the deadline passed first, or as cancelled if cancel() was called.
+ * 	While the search runs, a timer passes the node count and depth to the
+ * 	ProgressListener at a fixed rate, so the search threads never call it.
+ *
+ */
+
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+
+public class SolveJob {
+
+	//How often, in milliseconds, the listener is told about progress
+	public static final long PROGRESS_INTERVAL = 100;
+
+	private final SearchMonitor monitor;
+	private final CompletableFuture<Solution> result = new CompletableFuture<Solution>();
+	//Tells the listener about progress; null if there is no listener
+	private final Timer progressTimer;
+
+	/**
+	 * Constructor that takes the monitor the search will report to.
+	 * @param monitor The monitor of the search
+	 * @param listener Told about progress, or null
+	 */
+	SolveJob(final SearchMonitor monitor, final ProgressListener listener) {
+		this.monitor = monitor;
+		progressTimer = listener == null ? null : new Timer("Solve progress", true);
+		if (progressTimer != null) {
+			progressTimer.scheduleAtFixedRate(new TimerTask() {
+				public void run() {
+					listener.progress(monitor.getNodeCount(), monitor.getDepth());
+				}
+			}, PROGRESS_INTERVAL, PROGRESS_INTERVAL);
+		}
+	}
+
+	/**
+	 * Called on the search thread once the search has returned.
+	 * @param s The solution found, or null
+	 */
+	void finish(Solution s) {
+		stopProgress();
+		if (s != null)
+			result.complete(s);
+		else if (monitor.isTimedOut())
+			result.completeExceptionally(new TimeoutException());
+		else if (monitor.isStopped())
+			result.cancel(false);
+		else
+			result.complete(null);
+	}
+
+	/**
+	 * Called on the search thread if the search threw.
+	 */
+	void fail(Throwable t) {
+		stopProgress();
+		result.completeExceptionally(t);
+	}
+
+	/**
+	 * @return The future result, whose piece indices refer to Player.getPieces()
+	 */
+	public CompletableFuture<Solution> getResult() {
+		return result;
+	}
+
+	/**
+	 * Stops the search and cancels the result.
+	 */
+	public void cancel() {
+		monitor.stop();
+		stopProgress();
+		result.cancel(false);
+	}
+
+	private void stopProgress() {
+		if (progressTimer != null)
+			progressTimer.cancel();
+	}
+
+	/**
+	 * @return Whether the result is available, or the job was cancelled
+	 */
+	public boolean isDone() {
+		return result.isDone();
+	}
+
+	/**
+	 * @return The number of placements tried so far
+	 */
+	public long getNodeCount() {
+		return monitor.getNodeCount();
+	}
+}
@@ -0,0 +1,1030 @@
+/**
+ * Solver.java: A depth-first backtracking engine that fills a Grid
+ * 	one cell at a time. By default cells are filled from left to right
+ * 	and then top to bottom; with the MOST_CONSTRAINED ordering the next
+ * 	cell is always the empty one with the fewest pieces left that fit,
+ * 	and with the SPIRAL ordering cells are filled in a spiral outwards
+ * 	from the centre of the board.
+ *
+ * The packed sides of every piece in every rotation are copied into a
+ * 	flat int array when the Solver is created, so the search never touches
+ * 	(or rotates) the PuzzlePieces themselves. Only the most recent
+ * 	placement is ever undone, and the search keeps a single path of
+ * 	choices, so memory grows with the size of the board rather than
+ * 	with the number of orderings of the pieces. The candidates for a
+ * 	cell come from an EdgeIndex, so only pieces that already fit the
+ * 	cell's neighbours are ever tried.
+ *
+ * With the ROW_MAJOR ordering the search can share a TranspositionTable
+ * 	with other searches of the same board. Each time a row is completed,
+ * 	the state (the set of pieces on the board and the south sides of the
+ * 	row) is looked up, and whenever every way on from such a state has
+ * 	failed it is added to the table, so no search enters it again. Only
+ * 	row boundaries are recorded, as probing the table at every cell costs
+ * 	more than the states it saves.
+ *
+ * The search can also be snapshotted into a Checkpoint, which holds just
+ * 	the path of choices, and later resumed from it by replaying the path.
+ * 	With a CheckpointWriter, a snapshot is handed to the writer's thread
+ * 	whenever its interval has passed, and once more if the search is stopped.
+ *
+ * For randomized restarts, the candidates of each cell can be tried in a
+ * 	random order, and the search can be cut off after a number of
+ * 	placements and started again with a different order.
+ *
+ * The search can also be given a preferred placement, such as the pieces
+ * 	a player has put down, and a limit on how many cells may end up
+ * 	without their preferred piece. A count of the preferred cells given
+ * 	up is kept as pieces are placed and removed, and any placement that
+ * 	takes it over the limit is undone, so raising the limit one at a time
+ * 	finds a solution that keeps as many of the preferred cells as can be.
+ *
+ */
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class Solver {
+
+	//Direction indices used by the flat side table
+	static final int NORTH = 0;
+	static final int EAST = 1;
+	static final int SOUTH = 2;
+	static final int WEST = 3;
+
+	//Orderings: which empty cell the search fills next
+	public static final int ROW_MAJOR = 0;
+	public static final int MOST_CONSTRAINED = 1;
+	public static final int SPIRAL = 2;
+
+	private final int width;
+	private final int height;
+	private final int pieceCount;
+
+	//sides[piece * 4 + rotation] is the piece's packed sides in that rotation
+	private final int[] sides;
+
+	//The piece index and rotation index placed at each cell, -1 if empty
+	private final int[] cellPiece;
+	private final int[] cellRotation;
+
+	//Whether each piece of the bank is currently on the board
+	private final boolean[] used;
+
+	//border[cell] has bit d set if direction index d of the cell faces the
+	//outside of a bordered board, where only an EDGE side may go; all 0 if
+	//no piece has an EDGE side
+	private final int[] border;
+
+	//Looks up the (piece, rotation) pairs that fit a cell's neighbours
+	private final EdgeIndex index;
+
+	//lists[depth] holds the candidates of that depth's cell, encoded as
+	//piece * 4 + rotation, and next[depth] is the position of the next to try
+	private final int[][] lists;
+	private final int[] next;
+
+	//The cells that have been fixed with push() or fix(), which solve() may
+	//not change
+	private final boolean[] fixed;
+	//Whether the fixed cells are not the first cells of the board row by
+	//row, so the search's depths no longer line up with rows
+	private boolean scattered;
+
+	//order[depth] is the cell that was filled at that depth. The first
+	//start depths are the fixed cells.
+	private final int[] order;
+	private int start;
+
+	//The depth the search has reached; equal to the number of cells when
+	//the board is full
+	private int depth;
+
+	//One of ROW_MAJOR, MOST_CONSTRAINED or SPIRAL
+	private int ordering = ROW_MAJOR;
+
+	//The cells in the order the SPIRAL ordering fills them, and the
+	//position of each cell in that order
+	private final int[] spiral;
+	private final int[] spiralRank;
+
+	//Shuffles the candidates of each cell if not null; not shared with copies
+	private Random random;
+
+	//The search gives up after this many placements, if above 0, and
+	//cutOff records that it did
+	private long nodeLimit;
+	private boolean cutOff;
+
+	//With setPreferred(), preferred[cell] is the candidate the cell would
+	//rather hold and preferredCell[piece] the cell that would rather hold
+	//the piece, -1 for none; both shared with copies. lost counts the
+	//preferred cells that can no longer have their way, which every
+	//placement must keep within maxLost.
+	private int[] preferred;
+	private int[] preferredCell;
+	private int lost;
+	private int maxLost;
+
+	//With symmetry pruning, the anchor piece may only take the rotations
+	//whose bits are set in anchorRotations; -1 when pruning is off
+	private int anchor = -1;
+	private int anchorRotations = 0xF;
+
+	//How many placements are made between reports to the monitor
+	private static final int REPORT_INTERVAL = 4096;
+
+	//The number of placements made by the last search, and how many of
+	//them have been reported to the monitor
+	private long nodes;
+	private long reported;
+
+	//Polled and reported to by the search; null if nobody is watching
+	private SearchMonitor monitor;
+
+	//Where snapshots of the search are saved, not shared with copies; null for none
+	private CheckpointWriter checkpoints;
+	//The placements made before the checkpoint the search was resumed from
+	private long priorNodes;
+
+	//States known to lead nowhere, shared with copies; null for none
+	private TranspositionTable table;
+	//zobrist[p] is a random key for piece p, and hash the xor of the keys
+	//of the pieces on the board
+	private final long[] zobrist;
+	private long hash;
+	//The states at depths up to liveDepth on the current path are known to
+	//lead to a solution, so they must not be added to the table
+	private int liveDepth;
+
+	/**
+	 * Constructor that takes the dimensions of the board and the pieces
+	 * 	that may be placed on it. Null pieces are never placed.
+	 * @param width The width of the grid to be filled
+	 * @param height The height of the grid to be filled
+	 * @param pieces The bank of pieces to fill the grid with
+	 */
+	public Solver(int width, int height, PuzzlePiece[] pieces) {
+		this.width = width;
+		this.height = height;
+		pieceCount = pieces.length;
+		sides = new int[pieceCount * 4];
+		used = new boolean[pieceCount];
+		for (int p = 0; p < pieceCount; p++) {
+			if (pieces[p] == null) {
+				used[p] = true;
+				continue;
+			}
+			for (int r = 0; r < 4; r++)
+				sides[p * 4 + r] = Integer.rotateLeft(pieces[p].getPackedSides(), r * 8);
+		}
+		cellPiece = new int[width * height];
+		cellRotation = new int[width * height];
+		fixed = new boolean[width * height];
+		order = new int[width * height];
+		lists = new int[width * height][];
+		next = new int[width * height + 1];
+		Arrays.fill(cellPiece, -1);
+		index = new EdgeIndex(pieces);
+		zobrist = new long[pieceCount];
+		Random r = new Random(pieceCount);
+		for (int p = 0; p < pieceCount; p++)
+			zobrist[p] = r.nextLong();
+		border = new int[width * height];
+		if (PuzzlePiece.isBordered(pieces))
+			for (int c = 0; c < border.length; c++)
+				border[c] = borderOf(c % width, c / width, width, height);
+		spiral = spiralOrder(width, height);
+		spiralRank = new int[spiral.length];
+		for (int i = 0; i < spiral.length; i++)
+			spiralRank[spiral[i]] = i;
+	}
+
+	/**
+	 * Lists the cells of a board in a spiral, starting at the centre and
+	 * 	turning clockwise: one step east, one south, two west, two north,
+	 * 	three east and so on, skipping the steps that fall off the board.
+	 * @return The index of each cell, y * width + x, in spiral order
+	 */
+	static int[] spiralOrder(int width, int height) {
+		int[] cells = new int[width * height];
+		int x = (width - 1) / 2;
+		int y = (height - 1) / 2;
+		int[] dx = {1, 0, -1, 0};
+		int[] dy = {0, 1, 0, -1};
+		int n = 0;
+		for (int leg = 0; n < cells.length; leg++) {
+			for (int step = 0; step < leg / 2 + 1 && n < cells.length; step++) {
+				if (x >= 0 && x < width && y >= 0 && y < height)
+					cells[n++] = y * width + x;
+				x += dx[leg % 4];
+				y += dy[leg % 4];
+			}
+		}
+		return cells;
+	}
+
+	/**
+	 * @return The directions of a cell that face the outside of the board,
+	 * 	bit d set for direction index d
+	 */
+	static int borderOf(int x, int y, int width, int height) {
+		return (y == 0 ? 1 << NORTH : 0) | (x == width - 1 ? 1 << EAST : 0)
+				| (y == height - 1 ? 1 << SOUTH : 0) | (x == 0 ? 1 << WEST : 0);
+	}
+
+	/**
+	 * Copy constructor. The copy shares the (read-only) side table with
+	 * 	the original but has its own board, so the two can search on
+	 * 	different threads.
+	 * @param other The Solver to copy
+	 */
+	public Solver(Solver other) {
+		width = other.width;
+		height = other.height;
+		pieceCount = other.pieceCount;
+		sides = other.sides;
+		cellPiece = other.cellPiece.clone();
+		cellRotation = other.cellRotation.clone();
+		used = other.used.clone();
+		border = other.border;
+		index = other.index;
+		fixed = other.fixed.clone();
+		order = other.order.clone();
+		lists = new int[other.lists.length][];
+		next = new int[other.next.length];
+		start = other.start;
+		scattered = other.scattered;
+		depth = other.depth;
+		ordering = other.ordering;
+		spiral = other.spiral;
+		spiralRank = other.spiralRank;
+		nodeLimit = other.nodeLimit;
+		preferred = other.preferred;
+		preferredCell = other.preferredCell;
+		lost = other.lost;
+		maxLost = other.maxLost;
+		anchor = other.anchor;
+		anchorRotations = other.anchorRotations;
+		monitor = other.monitor;
+		table = other.table;
+		zobrist = other.zobrist;
+		hash = other.hash;
+		liveDepth = other.liveDepth;
+	}
+
+	/**
+	 * Searches for a way to fill every cell of the board. The search
+	 * 	places a piece at the cell chosen by the ordering, moves on to
+	 * 	the next cell, and when no piece fits, undoes only the last
+	 * 	placement and tries the next candidate there. Cells fixed with
+	 * 	push() or fix() are never undone.
+	 *
+	 * With the MOST_CONSTRAINED ordering every placement is also
+	 * 	checked forward: if it leaves an empty neighbour with no piece
+	 * 	that fits, it is undone straight away.
+	 * @return Whether the board was filled. If it was, the placement
+	 * 	can be read with getPiece() and getRotation(). Also returns
+	 * 	false if the search was stopped.
+	 */
+	public boolean solve() {
+		int cells = cellPiece.length;
+		clear();
+		depth = start;
+		if (depth < cells)
+			enter(depth);
+		return search();
+	}
+
+	/**
+	 * Resumes a search from a checkpoint, as if it had never stopped. The
+	 * 	Solver must have been made with the same board size, bank and
+	 * 	settings, and have the same cells fixed, as the one the checkpoint
+	 * 	was taken from; if it was not, this searches from the start instead.
+	 * @param from The checkpoint, or null to search from the start
+	 * @return Whether the board was filled, as for solve()
+	 */
+	public boolean solve(Checkpoint from) {
+		if (from == null || !restore(from))
+			return solve();
+		return search();
+	}
+
+	/**
+	 * Empties every cell that is not fixed and resets the counts.
+	 */
+	private void clear() {
+		for (int c = 0; c < cellPiece.length; c++)
+			if (cellPiece[c] >= 0 && !fixed[c])
+				unset(c);
+		nodes = 0;
+		reported = 0;
+		priorNodes = 0;
+		liveDepth = -1;
+		cutOff = false;
+	}
+
+	/**
+	 * Replays the path of a checkpoint, leaving the search ready to carry
+	 * 	on where the checkpoint was taken.
+	 * @return false, with the board cleared, if the checkpoint does not fit
+	 */
+	private boolean restore(Checkpoint c) {
+		int cells = cellPiece.length;
+		if (c.getSignature() != signature() || c.getStart() != start || c.getDepth() > cells)
+			return false;
+		for (int d = 0; d < start; d++)
+			if (cellPiece[order[d]] * 4 + cellRotation[order[d]] != c.getChoice(d))
+				return false;
+		clear();
+		priorNodes = c.getNodeCount();
+		for (depth = start; depth < c.getDepth(); depth++) {
+			enter(depth);
+			int k = c.getChoice(depth);
+			int[] list = lists[depth];
+			int i = 0;
+			while (i < list.length && list[i] != k)
+				i++;
+			if (i == list.length || !free(k)) {
+				clear();
+				return false;
+			}
+			set(order[depth], k >> 2, k & 3);
+			next[depth] = i + 1;
+		}
+		if (depth < cells) {
+			enter(depth);
+			next[depth] = Math.min(c.getResume(), lists[depth].length);
+		}
+		return true;
+	}
+
+	/**
+	 * @return A snapshot of the current path of the search, which solve()
+	 * 	can resume from
+	 */
+	public Checkpoint toCheckpoint() {
+		int length = Math.max(depth, start);
+		int[] path = new int[length];
+		for (int d = 0; d < length; d++)
+			path[d] = cellPiece[order[d]] * 4 + cellRotation[order[d]];
+		//A search that has run out of candidates resumes with none left
+		int resume = depth < start ? Integer.MAX_VALUE : next[depth];
+		return new Checkpoint(signature(), priorNodes + nodes, start, path, resume);
+	}
+
+	/**
+	 * @return A snapshot of a search that has not started yet: the fixed
+	 * 	cells, with every candidate of the next cell still to try
+	 */
+	Checkpoint toStartCheckpoint() {
+		int[] path = new int[start];
+		for (int d = 0; d < start; d++)
+			path[d] = cellPiece[order[d]] * 4 + cellRotation[order[d]];
+		return new Checkpoint(signature(), 0, start, path, 0);
+	}
+
+	/**
+	 * @return A hash of everything the order of the search depends on: the
+	 * 	board size, the bank, the ordering and the symmetry pruning
+	 */
+	private long signature() {
+		long h = TranspositionTable.mix(width * 0x10001L + height);
+		h = TranspositionTable.mix(h ^ ordering);
+		h = TranspositionTable.mix(h ^ (anchor * 16L + anchorRotations));
+		for (int p = 0; p < pieceCount; p++)
+			h = TranspositionTable.mix(h ^ (sides[p * 4] & 0xFFFFFFFFL) ^ (long) p << 32);
+		return h;
+	}
+
+	/**
+	 * Continues the search after solve() or next() filled the board, by
+	 * 	undoing the last placement and looking for the next way to fill it.
+	 * 	Calling next() until it returns false visits every solution once.
+	 * @return Whether another solution was found
+	 */
+	public boolean next() {
+		if (depth != cellPiece.length || --depth < start)
+			return false;
+		unset(order[depth]);
+		return search();
+	}
+
+	/**
+	 * Runs the search from the current depth until the board is full or
+	 * 	every candidate above the fixed cells has been tried.
+	 */
+	private boolean search() {
+		int cells = cellPiece.length;
+		while (depth >= start) {
+			if (depth == cells) {
+				liveDepth = cells;
+				report();
+				return true;
+			}
+			if (nodes - reported >= REPORT_INTERVAL) {
+				report();
+				if (checkpoints != null && checkpoints.isDue())
+					checkpoints.submit(toCheckpoint());
+			}
+			if (monitor != null && monitor.isStopped()) {
+				report();
+				if (checkpoints != null)
+					checkpoints.submit(toCheckpoint());
+				return false;
+			}
+			if (nodeLimit > 0 && nodes >= nodeLimit) {
+				cutOff = true;
+				report();
+				return false;
+			}
+			int cell = order[depth];
+			int[] list = lists[depth];
+			int i = next[depth];
+			boolean placed = false;
+			for (; i < list.length && !placed; i++) {
+				if (!free(list[i]))
+					continue;
+				set(cell, list[i] >> 2, list[i] & 3);
+				nodes++;
+				placed = lost <= maxLost && (ordering == ROW_MAJOR || neighboursLive(cell));
+				if (placed && usesTable() && depth + 1 < cells && (depth + 1) % width == 0 && table.contains(stateKey(depth + 1)))
+					placed = false;
+				if (!placed)
+					unset(cell);
+			}
+			if (placed) {
+				liveDepth = Math.min(liveDepth, depth);
+				next[depth++] = i;
+				if (depth < cells)
+					enter(depth);
+			}
+			else {
+				//Every way on from this state has failed
+				if (usesTable() && depth > liveDepth && depth % width == 0)
+					table.add(stateKey(depth));
+				if (--depth >= start)
+					unset(order[depth]);
+			}
+		}
+		report();
+		return false;
+	}
+
+	/**
+	 * @return Whether states are looked up in and added to the table, which
+	 * 	needs the cells to be filled in row-major order
+	 */
+	private boolean usesTable() {
+		return table != null && ordering == ROW_MAJOR && !scattered;
+	}
+
+	/**
+	 * Hashes the state of a row-major search that has filled the first
+	 * 	depth cells: the pieces on the board, and the sides that the next
+	 * 	cells will have to match, which are the south side of the last
+	 * 	filled cell of every column and the east side of the last cell.
+	 */
+	private long stateKey(int depth) {
+		long frontier = depth;
+		int column = depth % width;
+		for (int x = 0; x < width; x++) {
+			int c = depth - column + x - (x < column ? 0 : width);
+			int side = c >= 0 ? sideOf(c, SOUTH) : 0;
+			frontier = frontier * 0x9E3779B97F4A7C15L + (side & 0xFF);
+		}
+		if (column > 0)
+			frontier = frontier * 0x9E3779B97F4A7C15L + (sideOf(depth - 1, EAST) & 0xFF);
+		return hash ^ TranspositionTable.mix(frontier);
+	}
+
+	/**
+	 * Passes the placements made since the last report to the monitor.
+	 */
+	private void report() {
+		if (nodes != reported) {
+			if (monitor != null)
+				monitor.report(nodes - reported, depth);
+			reported = nodes;
+		}
+	}
+
+	/**
+	 * Chooses the cell to fill at a depth and looks up its candidates.
+	 */
+	private void enter(int depth) {
+		int cell = selectCell(depth);
+		order[depth] = cell;
+		lists[depth] = candidatesAt(cell);
+		next[depth] = 0;
+		if (random != null && lists[depth].length > 1) {
+			//The index's lists are shared, so shuffle a copy
+			int[] list = lists[depth].clone();
+			for (int i = list.length - 1; i > 0; i--) {
+				int j = random.nextInt(i + 1);
+				int t = list[i];
+				list[i] = list[j];
+				list[j] = t;
+			}
+			lists[depth] = list;
+		}
+		if (preferred != null && preferred[cell] >= 0) {
+			//Try the preferred candidate first
+			int[] list = lists[depth];
+			int i = 0;
+			while (i < list.length && list[i] != preferred[cell])
+				i++;
+			if (i > 0 && i < list.length) {
+				list = list.clone();
+				System.arraycopy(list, 0, list, 1, i);
+				list[0] = preferred[cell];
+				lists[depth] = list;
+			}
+		}
+	}
+
+	/**
+	 * Chooses the next empty cell according to the ordering.
+	 * @param depth The depth the cell will be filled at
+	 * @return The index of the cell, y * width + x
+	 */
+	private int selectCell(int depth) {
+		if (ordering == MOST_CONSTRAINED) {
+			int best = -1;
+			int bestCount = Integer.MAX_VALUE;
+			for (int c = 0; c < cellPiece.length && bestCount > 0; c++) {
+				if (cellPiece[c] >= 0)
+					continue;
+				int[] list = candidatesAt(c);
+				if (list.length >= bestCount)
+					continue;
+				int count = available(list, bestCount);
+				if (count < bestCount) {
+					best = c;
+					bestCount = count;
+				}
+			}
+			return best;
+		}
+		if (ordering == SPIRAL) {
+			//Every cell before the one filled last is already occupied
+			int i = depth > start ? spiralRank[order[depth - 1]] + 1 : 0;
+			while (cellPiece[spiral[i]] >= 0)
+				i++;
+			return spiral[i];
+		}
+		//Every cell before the one filled last is already occupied
+		int c = depth > start ? order[depth - 1] + 1 : 0;
+		while (cellPiece[c] >= 0)
+			c++;
+		return c;
+	}
+
+	/**
+	 * Counts the candidates whose piece is not on the board yet.
+	 * @param list The candidates, encoded as piece * 4 + rotation
+	 * @param limit Counting stops once this many have been found
+	 * @return The number found, at most limit
+	 */
+	private int available(int[] list, int limit) {
+		int count = 0;
+		for (int i = 0; i < list.length && count < limit; i++)
+			if (free(list[i]))
+				count++;
+		return count;
+	}
+
+	/**
+	 * Checks that every empty neighbour of a cell still has at least one
+	 * 	piece that fits it.
+	 * @param cell The index of the cell, y * width + x
+	 * @return false if some empty neighbour can no longer be filled
+	 */
+	private boolean neighboursLive(int cell) {
+		int x = cell % width;
+		return !(cell >= width && dead(cell - width))
+				&& !(x < width - 1 && dead(cell + 1))
+				&& !(cell + width < cellPiece.length && dead(cell + width))
+				&& !(x > 0 && dead(cell - 1));
+	}
+
+	/**
+	 * @return Whether a cell is empty and no piece left fits it
+	 */
+	private boolean dead(int cell) {
+		return cellPiece[cell] < 0 && available(candidatesAt(cell), 1) == 0;
+	}
+
+	/**
+	 * Looks up the pieces that fit every occupied neighbour of a cell,
+	 * 	used or not. On a bordered board the sides facing the outside are
+	 * 	looked up as EDGE, which packs as 0.
+	 * @param cell The index of the cell, y * width + x
+	 * @return The candidates, encoded as piece * 4 + rotation
+	 */
+	private int[] candidatesAt(int cell) {
+		int mask = border[cell];
+		int packed = 0;
+		int x = cell % width;
+		if (cell >= width && cellPiece[cell - width] >= 0) {
+			mask |= 1 << NORTH;
+			packed |= (-sideOf(cell - width, SOUTH) & 0xFF) << NORTH * 8;
+		}
+		if (x < width - 1 && cellPiece[cell + 1] >= 0) {
+			mask |= 1 << EAST;
+			packed |= (-sideOf(cell + 1, WEST) & 0xFF) << EAST * 8;
+		}
+		if (cell + width < cellPiece.length && cellPiece[cell + width] >= 0) {
+			mask |= 1 << SOUTH;
+			packed |= (-sideOf(cell + width, NORTH) & 0xFF) << SOUTH * 8;
+		}
+		if (x > 0 && cellPiece[cell - 1] >= 0) {
+			mask |= 1 << WEST;
+			packed |= (-sideOf(cell - 1, EAST) & 0xFF) << WEST * 8;
+		}
+		return index.get(mask, packed);
+	}
+
+	/**
+	 * @return The side, in the given direction, of the piece placed at a cell
+	 */
+	private int sideOf(int cell, int direction) {
+		return PuzzlePiece.unpack(sides[cellPiece[cell] * 4 + cellRotation[cell]], direction);
+	}
+
+	/**
+	 * Checks whether a piece with a certain rotation matches every
+	 * 	occupied neighbour of a cell, and has its EDGE sides facing exactly
+	 * 	the outside of a bordered board.
+	 * @param cell The index of the cell, y * width + x
+	 * @param p The index of the piece in the bank
+	 * @param r The rotation index (quarter turns clockwise)
+	 * @return Whether the piece fits at the cell
+	 */
+	private boolean fits(int cell, int p, int r) {
+		int packed = sides[p * 4 + r];
+		int x = cell % width;
+		return PuzzlePiece.edges(packed) == border[cell]
+				&& !(x > 0 && clashes(cell - 1, EAST, PuzzlePiece.unpack(packed, WEST)))
+				&& !(cell >= width && clashes(cell - width, SOUTH, PuzzlePiece.unpack(packed, NORTH)))
+				&& !(x < width - 1 && clashes(cell + 1, WEST, PuzzlePiece.unpack(packed, EAST)))
+				&& !(cell + width < cellPiece.length && clashes(cell + width, NORTH, PuzzlePiece.unpack(packed, SOUTH)));
+	}
+
+	/**
+	 * @return true if the neighbour cell is occupied and its side in the
+	 * 	given direction is not the complement of the given side
+	 */
+	private boolean clashes(int neighbour, int direction, int side) {
+		return cellPiece[neighbour] >= 0 && sideOf(neighbour, direction) != -side;
+	}
+
+	/**
+	 * Fixes a piece at the cell the ordering would fill next, if it fits
+	 * 	there. Fixed cells are treated as part of the board by solve().
+	 * @param p The index of the piece in the bank
+	 * @param r The rotation index (quarter turns clockwise)
+	 * @return Whether the piece was free and fit at the cell
+	 */
+	public boolean push(int p, int r) {
+		if (!canPush(p, r))
+			return false;
+		int cell = selectCell(start);
+		set(cell, p, r);
+		fixed[cell] = true;
+		order[start++] = cell;
+		findScattered();
+		return true;
+	}
+
+	/**
+	 * Fixes a piece at any empty cell, if it fits there. Unlike push(),
+	 * 	the cell need not be the one the ordering would fill next, so a
+	 * 	search can be started from a board the player has partly filled.
+	 * 	Anything a search has placed is cleared first. Symmetry pruning
+	 * 	should be set before any cell is fixed.
+	 * @param x The x-coordinate of the cell
+	 * @param y The y-coordinate of the cell
+	 * @param p The index of the piece in the bank
+	 * @param r The rotation index (quarter turns clockwise)
+	 * @return Whether the cell was empty and the piece free and fit there
+	 */
+	public boolean fix(int x, int y, int p, int r) {
+		clear();
+		depth = start;
+		int cell = y * width + x;
+		if (cellPiece[cell] >= 0 || !free(p * 4 + r) || !fits(cell, p, r))
+			return false;
+		set(cell, p, r);
+		fixed[cell] = true;
+		order[start++] = cell;
+		depth = start;
+		findScattered();
+		return true;
+	}
+
+	/**
+	 * Empties a cell fixed with push() or fix(). Anything a search has
+	 * 	placed is cleared first.
+	 * @return Whether the cell was fixed
+	 */
+	public boolean unfix(int x, int y) {
+		clear();
+		depth = start;
+		int cell = y * width + x;
+		if (!fixed[cell])
+			return false;
+		int d = 0;
+		while (order[d] != cell)
+			d++;
+		System.arraycopy(order, d + 1, order, d, start - d - 1);
+		start--;
+		depth = start;
+		fixed[cell] = false;
+		unset(cell);
+		findScattered();
+		return true;
+	}
+
+	private void findScattered() {
+		scattered = false;
+		for (int d = 0; d < start; d++)
+			scattered |= order[d] >= start;
+	}
+
+	/**
+	 * @return Whether a cell has been fixed with push() or fix()
+	 */
+	public boolean isFixed(int x, int y) {
+		return fixed[y * width + x];
+	}
+
+	/**
+	 * @return Whether push() would accept the piece with the given rotation
+	 */
+	public boolean canPush(int p, int r) {
+		if (start == cellPiece.length || !free(p * 4 + r))
+			return false;
+		int cell = selectCell(start);
+		return cell >= 0 && fits(cell, p, r);
+	}
+
+	/**
+	 * @return Whether a candidate's piece is off the board and, if it is
+	 * 	the anchor, whether symmetry pruning allows its rotation
+	 * @param k The candidate, encoded as piece * 4 + rotation
+	 */
+	private boolean free(int k) {
+		return !used[k >> 2] && (k >> 2 != anchor || (anchorRotations >> (k & 3) & 1) != 0);
+	}
+
+	/**
+	 * Turns symmetry pruning on or off. Turning a whole solution through
+	 * 	180 degrees (or, on a square board, 90 degrees) gives another
+	 * 	solution in which every piece has a different rotation. So with
+	 * 	pruning on, the first piece of the bank is only tried with rotation
+	 * 	0 on a square board, or 0 and 90 on any other, and each set of
+	 * 	equivalent solutions is searched just once. Pruning is only applied
+	 * 	when the board has no fixed cells and every piece is needed to fill
+	 * 	it; otherwise the multiplicity stays 1.
+	 * @param on Whether to prune equivalent solutions
+	 */
+	public void setSymmetryPruning(boolean on) {
+		anchor = -1;
+		anchorRotations = 0xF;
+		int free = 0;
+		for (int p = 0; p < pieceCount; p++)
+			if (!used[p])
+				free++;
+		if (!on || start > 0 || free != cellPiece.length)
+			return;
+		anchor = 0;
+		while (used[anchor])
+			anchor++;
+		anchorRotations = width == height ? 1 : 3;
+	}
+
+	/**
+	 * @return How many solutions each solution found by the search stands
+	 * 	for: 4 on a square board and 2 on any other with symmetry pruning
+	 * 	on, and 1 otherwise
+	 */
+	public int getMultiplicity() {
+		if (anchor < 0)
+			return 1;
+		return width == height ? 4 : 2;
+	}
+
+	/**
+	 * Sets which empty cell the search fills next.
+	 * @param ordering ROW_MAJOR, MOST_CONSTRAINED or SPIRAL
+	 */
+	public void setOrdering(int ordering) {
+		this.ordering = ordering;
+	}
+
+	/**
+	 * @return The ordering used by solve() and push()
+	 */
+	public int getOrdering() {
+		return ordering;
+	}
+
+	/**
+	 * Makes the search try the candidates of each cell in a random order
+	 * 	instead of the order of the bank. Copies do not share the Random.
+	 * @param random The source of the order, or null for the bank's order
+	 */
+	public void setRandom(Random random) {
+		this.random = random;
+	}
+
+	/**
+	 * Makes solve() give up after a number of placements, as if there were
+	 * 	no solution; isCutOff() then tells the two apart. Copies made
+	 * 	afterwards have the same limit.
+	 * @param limit The number of placements, or 0 for no limit
+	 */
+	public void setNodeLimit(long limit) {
+		nodeLimit = Math.max(0, limit);
+	}
+
+	/**
+	 * Makes the search prefer a placement: each cell is tried first with
+	 * 	the piece and rotation it has there, and no more than maxLost of
+	 * 	its cells may end up without them, whether because the cell holds
+	 * 	something else or because its piece has gone elsewhere. Copies made
+	 * 	afterwards have the same preferences.
+	 * @param placement The preferred placement, whose piece indices refer
+	 * 	to this Solver's bank, or null for none. Its empty cells have no
+	 * 	preference.
+	 * @param maxLost How many of its cells may differ
+	 */
+	public void setPreferred(Solution placement, int maxLost) {
+		this.maxLost = placement == null ? 0 : Math.max(0, maxLost);
+		lost = 0;
+		if (placement == null) {
+			preferred = null;
+			preferredCell = null;
+			return;
+		}
+		preferred = new int[cellPiece.length];
+		preferredCell = new int[pieceCount];
+		Arrays.fill(preferredCell, -1);
+		for (int c = 0; c < preferred.length; c++) {
+			int p = placement.getPiece(c % width, c / width);
+			preferred[c] = p < 0 ? -1 : p * 4 + placement.getRotation(c % width, c / width) / 90;
+			if (p >= 0)
+				preferredCell[p] = c;
+		}
+		//Count what the cells already filled have given up
+		for (int c = 0; c < preferred.length; c++) {
+			int want = preferred[c];
+			if (want >= 0 && (cellPiece[c] >= 0 ? cellPiece[c] * 4 + cellRotation[c] != want : used[want >> 2]))
+				lost++;
+		}
+	}
+
+	/**
+	 * Counts the preferred cells that placing a candidate at an empty cell
+	 * 	would give up: the cell itself, if it would rather hold something
+	 * 	else that is still free, and the cell that would rather hold the
+	 * 	candidate's piece, if that is another cell and still empty.
+	 * @param cell The index of the cell, y * width + x
+	 * @param k The candidate, encoded as piece * 4 + rotation
+	 */
+	private int loses(int cell, int k) {
+		int want = preferred[cell];
+		int home = preferredCell[k >> 2];
+		return (want >= 0 && want != k && !used[want >> 2] ? 1 : 0)
+				+ (home >= 0 && home != cell && cellPiece[home] < 0 ? 1 : 0);
+	}
+
+	/**
+	 * @return How many cells of the preferred placement the current
+	 * 	placement gives up, 0 if there is none
+	 */
+	public int getLostCount() {
+		return lost;
+	}
+
+	/**
+	 * @return Whether the last search gave up because it reached the node limit
+	 */
+	public boolean isCutOff() {
+		return cutOff;
+	}
+
+	/**
+	 * @return The number of cells that have been fixed with push() or fix()
+	 */
+	public int getDepth() {
+		return start;
+	}
+
+	/**
+	 * @return The number of pieces in the bank this Solver was made with
+	 */
+	public int getPieceCount() {
+		return pieceCount;
+	}
+
+	/**
+	 * @return Whether every cell of the board has been fixed with push() or fix()
+	 */
+	public boolean isComplete() {
+		return start == cellPiece.length;
+	}
+
+	/**
+	 * Sets the monitor that solve() reports to and polls for being
+	 * 	stopped. Copies made afterwards share the same monitor.
+	 * @param monitor The monitor, or null to never stop early
+	 */
+	public void setMonitor(SearchMonitor monitor) {
+		this.monitor = monitor;
+	}
+
+	/**
+	 * @return The monitor solve() reports to, or null
+	 */
+	public SearchMonitor getMonitor() {
+		return monitor;
+	}
+
+	/**
+	 * Sets where snapshots of the search are saved while solve() runs.
+	 * 	Copies do not save snapshots.
+	 * @param writer The writer, or null to save none
+	 */
+	public void setCheckpointWriter(CheckpointWriter writer) {
+		checkpoints = writer;
+	}
+
+	/**
+	 * Sets the table of dead states the search looks in and adds to. It is
+	 * 	only used with the ROW_MAJOR ordering, and should only be shared by
+	 * 	this Solver and its copies. Copies made afterwards share it.
+	 * @param table The table, or null to use none
+	 */
+	public void setTranspositionTable(TranspositionTable table) {
+		this.table = table;
+	}
+
+	/**
+	 * @return The table of dead states, or null
+	 */
+	public TranspositionTable getTranspositionTable() {
+		return table;
+	}
+
+	private void set(int cell, int p, int r) {
+		if (preferred != null)
+			lost += loses(cell, p * 4 + r);
+		cellPiece[cell] = p;
+		cellRotation[cell] = r;
+		used[p] = true;
+		hash ^= zobrist[p];
+	}
+
+	private void unset(int cell) {
+		int p = cellPiece[cell];
+		used[p] = false;
+		hash ^= zobrist[p];
+		cellPiece[cell] = -1;
+		if (preferred != null)
+			lost -= loses(cell, p * 4 + cellRotation[cell]);
+	}
+
+	/**
+	 * @return The index in the bank of the piece placed at a cell, -1 if empty
+	 */
+	public int getPiece(int x, int y) {
+		return cellPiece[y * width + x];
+	}
+
+	/**
+	 * @return The rotation, in degrees, of the piece placed at a cell
+	 */
+	public int getRotation(int x, int y) {
+		return cellRotation[y * width + x] * 90;
+	}
+
+	/**
+	 * @return An immutable copy of the current placement, normally taken
+	 * 	after solve() or next() returns true
+	 */
+	public Solution toSolution() {
+		int[] cells = new int[cellPiece.length];
+		for (int c = 0; c < cells.length; c++)
+			cells[c] = cellPiece[c] < 0 ? -1 : cellPiece[c] * 4 + cellRotation[c];
+		return new Solution(width, height, cells);
+	}
+
+	/**
+	 * @return The number of placements made since the last call to solve()
+	 */
+	public long getNodeCount() {
+		return nodes;
+	}
+}
@@ -0,0 +1,393 @@
+/**
+ * SolverCluster.java: Runs a backtracking search across several worker
+ * 	processes on the same machine, talking to them over loopback TCP.
+ *
+ * A work unit is a path of choices, piece * 4 + rotation for each cell,
+ * 	that a worker fixes with Solver.push() before searching the rest of
+ * 	the board. The search starts as a single unit, the empty path, given
+ * 	to the first worker. A worker splits any unit shorter than the split
+ * 	depth into one unit per candidate of its next cell and keeps them in
+ * 	its own queue, searching from the front. When a worker runs out of
+ * 	work, the coordinator asks a busy worker to give up half of its queue,
+ * 	taken from the back where the biggest units are, and passes it on. The
+ * 	first worker to fill the board sends its solution, and every worker is
+ * 	then told to stop.
+ *
+ * Messages are a tag byte followed by big-endian ints and longs:
+ *
+ * 	JOB      width, height, ordering, pruning, split depth, piece count,
+ * 	         then for each piece a present byte and its packed sides
+ * 	UNIT     path length, then the path
+ * 	STEAL    (no body)
+ * 	STOP     (no body)
+ * 	IDLE     placements made since the last message
+ * 	GIVE     unit count, then each unit as length and path
+ * 	SOLUTION placements made since the last message, cell count, then
+ * 	         piece * 4 + rotation for each cell
+ *
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+
+public class SolverCluster {
+
+	//The length of path below which workers split units
+	public static final int DEFAULT_SPLIT_DEPTH = 4;
+
+	//Coordinator to worker
+	static final int JOB = 1;
+	static final int UNIT = 2;
+	static final int STEAL = 3;
+	static final int STOP = 4;
+	//Worker to coordinator
+	static final int IDLE = 10;
+	static final int GIVE = 11;
+	static final int SOLUTION = 12;
+
+	//How long, in milliseconds, the workers have to start and connect
+	private static final int CONNECT_TIMEOUT = 30000;
+
+	private final int workerCount;
+	private final int splitDepth;
+
+	//The state of the search in progress, guarded by this
+	private final ArrayDeque<int[]> pending = new ArrayDeque<int[]>();
+	private final ArrayDeque<Worker> idle = new ArrayDeque<Worker>();
+	private final ArrayList<Worker> workers = new ArrayList<Worker>();
+	private int steals;
+	private int nextVictim;
+	private boolean finished;
+	private int[] solution;
+	private IOException failure;
+	private SearchMonitor monitor;
+	private long nodes;
+
+	/**
+	 * Constructor that takes the number of worker processes and uses the
+	 * 	default split depth.
+	 * @param workerCount The number of worker processes to start
+	 */
+	public SolverCluster(int workerCount) {
+		this(workerCount, DEFAULT_SPLIT_DEPTH);
+	}
+
+	/**
+	 * Constructor that takes the number of worker processes and the length
+	 * 	of path below which units are split.
+	 * @param workerCount The number of worker processes to start
+	 * @param splitDepth Units with a shorter path are split by the workers
+	 */
+	public SolverCluster(int workerCount, int splitDepth) {
+		this.workerCount = Math.max(1, workerCount);
+		this.splitDepth = Math.max(0, splitDepth);
+	}
+
+	/**
+	 * Starts the workers, searches for a way to fill the board, and stops
+	 * 	the workers again.
+	 * @param width The width of the grid to be filled
+	 * @param height The height of the grid to be filled
+	 * @param pieces The bank of pieces; null pieces are never placed
+	 * @param ordering The Solver ordering the workers search with
+	 * @param pruning Whether the workers use symmetry pruning
+	 * @param monitor Reported to, and polled for being stopped; may be null
+	 * @return A solution whose piece indices refer to pieces, or null if
+	 * 	there is none or the search was stopped
+	 * @throws UncheckedIOException If the workers could not be started, or
+	 * 	one of them was lost
+	 */
+	public synchronized Solution solve(int width, int height, PuzzlePiece[] pieces, int ordering,
+			boolean pruning, SearchMonitor monitor) {
+		pending.clear();
+		idle.clear();
+		workers.clear();
+		steals = 0;
+		finished = false;
+		solution = null;
+		failure = null;
+		nodes = 0;
+		this.monitor = monitor;
+		ArrayList<Process> processes = new ArrayList<Process>();
+		ServerSocket server = null;
+		try {
+			server = new ServerSocket(0, workerCount, InetAddress.getLoopbackAddress());
+			server.setSoTimeout(CONNECT_TIMEOUT);
+			String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+			for (int i = 0; i < workerCount; i++)
+				processes.add(new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+						"ClusterWorker", String.valueOf(server.getLocalPort()))
+						.redirectOutput(ProcessBuilder.Redirect.INHERIT)
+						.redirectError(ProcessBuilder.Redirect.INHERIT).start());
+			for (int i = 0; i < workerCount; i++) {
+				Worker w = new Worker(server.accept());
+				workers.add(w);
+				w.sendJob(width, height, pieces, ordering, pruning, splitDepth);
+			}
+			//The first worker starts with the whole search; the rest ask for work
+			pending.add(new int[0]);
+			for (Worker w : workers)
+				w.start();
+			while (!finished) {
+				wait(100);
+				if (monitor != null) {
+					monitor.report(0, 0);
+					if (monitor.isStopped())
+						finish(null);
+				}
+				//A worker with nothing to give may have split its unit since
+				for (Worker w : workers)
+					w.dry = false;
+				dispatch();
+			}
+			if (failure != null)
+				throw failure;
+			return solution == null ? null : new Solution(width, height, solution);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		} finally {
+			synchronized (this) {
+				finished = true;
+				for (Worker w : workers)
+					w.close();
+				workers.clear();
+			}
+			try {
+				if (server != null)
+					server.close();
+			} catch (IOException e) {
+			}
+			for (Process p : processes)
+				p.destroy();
+		}
+	}
+
+	/**
+	 * @return The number of placements made by all workers in the last search
+	 */
+	public synchronized long getNodeCount() {
+		return nodes;
+	}
+
+	/**
+	 * @return The number of worker processes
+	 */
+	public int getWorkerCount() {
+		return workerCount;
+	}
+
+	/**
+	 * Ends the search and tells every worker to stop.
+	 * @param cells The solution found, or null
+	 */
+	private synchronized void finish(int[] cells) {
+		if (finished)
+			return;
+		finished = true;
+		solution = cells;
+		for (Worker w : workers)
+			w.send(STOP);
+		notifyAll();
+	}
+
+	private synchronized void fail(IOException e) {
+		if (finished)
+			return;
+		failure = e;
+		finish(null);
+	}
+
+	private synchronized void addNodes(long n) {
+		nodes += n;
+		if (monitor != null)
+			monitor.report(n, 0);
+	}
+
+	/**
+	 * Hands pending units to idle workers, asks busy workers for more
+	 * 	if there are none, and ends the search once every worker is idle
+	 * 	with nothing left to hand out.
+	 */
+	private synchronized void dispatch() {
+		if (finished)
+			return;
+		while (!idle.isEmpty() && !pending.isEmpty()) {
+			Worker w = idle.poll();
+			w.dry = false;
+			w.sendUnit(pending.poll());
+		}
+		if (idle.isEmpty())
+			return;
+		if (idle.size() == workers.size() && steals == 0) {
+			finish(null);
+			return;
+		}
+		//Ask busy workers that may still have queued units to share them
+		for (int tried = 0; tried < workers.size() && steals < idle.size(); tried++) {
+			Worker victim = workers.get(nextVictim++ % workers.size());
+			if (!victim.dry && !victim.asked && !idle.contains(victim)) {
+				victim.asked = true;
+				steals++;
+				victim.send(STEAL);
+			}
+		}
+	}
+
+	/**
+	 * The coordinator's end of the connection to one worker process. Its
+	 * 	thread reads the worker's messages.
+	 */
+	private class Worker extends Thread {
+
+		private final Socket socket;
+		private final DataInputStream in;
+		private final DataOutputStream out;
+
+		//Whether the worker has been asked to give up units and not yet
+		//answered, and whether it last had none to give
+		private boolean asked;
+		private boolean dry;
+
+		public Worker(Socket socket) throws IOException {
+			super("Cluster coordinator");
+			setDaemon(true);
+			this.socket = socket;
+			socket.setTcpNoDelay(true);
+			in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+		}
+
+		public void sendJob(int width, int height, PuzzlePiece[] pieces, int ordering, boolean pruning,
+				int splitDepth) throws IOException {
+			synchronized (out) {
+				out.writeByte(JOB);
+				out.writeInt(width);
+				out.writeInt(height);
+				out.writeInt(ordering);
+				out.writeBoolean(pruning);
+				out.writeInt(splitDepth);
+				out.writeInt(pieces.length);
+				for (PuzzlePiece p : pieces) {
+					out.writeBoolean(p != null);
+					out.writeInt(p == null ? 0 : p.getPackedSides());
+				}
+				out.flush();
+			}
+		}
+
+		public void sendUnit(int[] unit) {
+			try {
+				synchronized (out) {
+					out.writeByte(UNIT);
+					writePath(out, unit);
+					out.flush();
+				}
+			} catch (IOException e) {
+				fail(e);
+			}
+		}
+
+		public void send(int tag) {
+			try {
+				synchronized (out) {
+					out.writeByte(tag);
+					out.flush();
+				}
+			} catch (IOException e) {
+				//A worker that has gone away cannot be stopped anyway
+				if (tag != STOP)
+					fail(e);
+			}
+		}
+
+		public void run() {
+			try {
+				while (true) {
+					int tag = in.readByte();
+					if (tag == IDLE) {
+						long n = in.readLong();
+						synchronized (SolverCluster.this) {
+							if (!workers.contains(this))
+								return;
+							addNodes(n);
+							idle.add(this);
+							dispatch();
+						}
+					}
+					else if (tag == GIVE) {
+						int count = in.readInt();
+						ArrayList<int[]> units = new ArrayList<int[]>(count);
+						for (int i = 0; i < count; i++)
+							units.add(readPath(in));
+						synchronized (SolverCluster.this) {
+							if (!workers.contains(this))
+								return;
+							pending.addAll(units);
+							asked = false;
+							dry = count == 0;
+							steals--;
+							dispatch();
+						}
+					}
+					else if (tag == SOLUTION) {
+						long n = in.readLong();
+						int[] cells = readPath(in);
+						synchronized (SolverCluster.this) {
+							if (!workers.contains(this))
+								return;
+							addNodes(n);
+							finish(cells);
+						}
+					}
+					else
+						throw new IOException("Unknown message " + tag);
+				}
+			} catch (IOException e) {
+				synchronized (SolverCluster.this) {
+					//Closing the sockets at the end of a search ends up here too
+					if (workers.contains(this))
+						fail(e);
+				}
+			}
+		}
+
+		public void close() {
+			try {
+				socket.close();
+			} catch (IOException e) {
+			}
+		}
+	}
+
+	/**
+	 * Writes a path, or the cells of a solution, as its length and its ints.
+	 */
+	static void writePath(DataOutputStream out, int[] path) throws IOException {
+		out.writeInt(path.length);
+		for (int k : path)
+			out.writeInt(k);
+	}
+
+	/**
+	 * Reads a path written by writePath().
+	 */
+	static int[] readPath(DataInputStream in) throws IOException {
+		int[] path = new int[in.readInt()];
+		for (int i = 0; i < path.length; i++)
+			path[i] = in.readInt();
+		return path;
+	}
+}
@@ -0,0 +1,143 @@
+/**
+ * TranspositionTable.java: A fixed-size set of search states that are
+ * 	known to lead nowhere, shared by every thread of a search.
+ *
+ * A state is identified only by a 64-bit hash, stored as a plain long, so
+ * 	the table is a single array of longs. It is open addressed: a key is
+ * 	looked for in a short run of slots starting where its hash points, and
+ * 	added with a compare-and-set into the first empty one, so threads never
+ * 	lock or wait for each other. When the whole run is full the key
+ * 	replaces one of the others; forgetting a dead state only means it may
+ * 	be searched again.
+ *
+ * Two different states with the same 64-bit hash would be mistaken for
+ * 	each other, which can make the search skip a live state. With a few
+ * 	million states in the table that is vanishingly unlikely.
+ *
+ */
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+public class TranspositionTable {
+
+	//The number of slots used when none is given: 8 megabytes
+	public static final int DEFAULT_CAPACITY = 1 << 20;
+
+	//How many slots are looked at for each key
+	private static final int PROBE_LIMIT = 8;
+
+	//Each slot holds a key, or 0 if it is empty
+	private final AtomicLongArray keys;
+	private final int mask;
+
+	private final LongAdder probes = new LongAdder();
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder inserts = new LongAdder();
+
+	/**
+	 * Constructor that takes the number of keys the table can hold.
+	 * @param capacity The number of slots, rounded up to a power of two
+	 */
+	public TranspositionTable(int capacity) {
+		int size = Integer.highestOneBit(Math.max(PROBE_LIMIT, Math.min(capacity, 1 << 30)) - 1) << 1;
+		keys = new AtomicLongArray(size);
+		mask = size - 1;
+	}
+
+	/**
+	 * Checks whether a state has been added as dead.
+	 * @param key The 64-bit hash of the state
+	 * @return Whether the state is in the table
+	 */
+	public boolean contains(long key) {
+		key = nonZero(key);
+		probes.increment();
+		int slot = slot(key);
+		for (int i = 0; i < PROBE_LIMIT; i++) {
+			long k = keys.get(slot + i & mask);
+			if (k == key) {
+				hits.increment();
+				return true;
+			}
+			if (k == 0)
+				return false;
+		}
+		return false;
+	}
+
+	/**
+	 * Adds a state that is known to lead nowhere.
+	 * @param key The 64-bit hash of the state
+	 */
+	public void add(long key) {
+		key = nonZero(key);
+		inserts.increment();
+		int slot = slot(key);
+		for (int i = 0; i < PROBE_LIMIT; i++) {
+			int s = slot + i & mask;
+			long k = keys.get(s);
+			if (k == key || k == 0 && keys.compareAndSet(s, 0, key) || keys.get(s) == key)
+				return;
+		}
+		//The run is full: replace the entry the key's own bits pick out
+		keys.set(slot + (int) (key >>> 61) & mask, key);
+	}
+
+	/**
+	 * Empties the table and resets the counts.
+	 */
+	public void clear() {
+		for (int i = 0; i < keys.length(); i++)
+			keys.set(i, 0);
+		probes.reset();
+		hits.reset();
+		inserts.reset();
+	}
+
+	/**
+	 * @return The number of slots
+	 */
+	public int getCapacity() {
+		return keys.length();
+	}
+
+	/**
+	 * @return The number of times contains() has been called
+	 */
+	public long getProbes() {
+		return probes.sum();
+	}
+
+	/**
+	 * @return The number of times contains() found the state
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * @return The number of times add() has been called
+	 */
+	public long getInserts() {
+		return inserts.sum();
+	}
+
+	private int slot(long key) {
+		return (int) (key ^ key >>> 32) & mask;
+	}
+
+	/**
+	 * The finaliser of SplitMix64, for building keys: a hash in which every
+	 * 	bit of the input affects every bit of the output.
+	 */
+	static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	private static long nonZero(long key) {
+		return key == 0 ? 1 : key;
+	}
+}
@@ -0,0 +1,390 @@
+/**
+ * UniquePuzzleGenerator.java: Makes batches of puzzles that each have
+ * 	exactly one solution, on every core, and writes them to a file.
+ *
+ * Each puzzle starts as a random tiling from a PuzzleGenerator, laid out
+ * 	as a Grid of PuzzlePieces whose touching sides all match. Its pieces
+ * 	are shuffled and turned into a bank, remembering which cell of the
+ * 	tiling each came from, and the bank is checked for a second solution.
+ * 	If there is one, the tiling is changed where the two solutions differ:
+ * 	a piece that the two put in different places or turns is traced back
+ * 	to its cell of the tiling, and one of the edges of that cell is given
+ * 	a new random side, which both pieces along it take on, so the tiling
+ * 	still fits together but the other solution most likely no longer does.
+ * 	This repeats until the bank is unique. A tiling that will not become
+ * 	unique after a number of changes, or that takes the check too long
+ * 	to decide, is thrown away for a new one.
+ *
+ * Every puzzle of a batch is made from its own seed, worked out from the
+ * 	batch's seed and the puzzle's position, and the checks are cut off
+ * 	after a number of placements rather than a time, so the same seed
+ * 	always gives the same file, however many threads make it. Puzzles are
+ * 	written in order, each as soon as those before it are done, in the
+ * 	format of PuzzleGenerator.write().
+ *
+ */
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class UniquePuzzleGenerator {
+
+	//The placements a uniqueness check may make when no limit is given
+	public static final long DEFAULT_NODE_LIMIT = 2000000;
+
+	//How many edges of one tiling are changed before it is given up on
+	private static final int CHANGES_PER_CELL = 4;
+	//How many tilings are tried for one puzzle before it is given up on
+	private static final int MAX_TILINGS = 1000;
+
+	private final int width;
+	private final int height;
+	private final int suits;
+	private final long seed;
+	private final boolean bordered;
+
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private long nodeLimit = DEFAULT_NODE_LIMIT;
+
+	//What the last batch took: tilings made, edges changed, checks cut
+	//off, puzzles written, and its running time in nanoseconds
+	private final AtomicLong tilings = new AtomicLong();
+	private final AtomicLong changes = new AtomicLong();
+	private final AtomicLong cutOffs = new AtomicLong();
+	private int written;
+	private long elapsed;
+
+	/**
+	 * Constructor that takes the size of the boards, the number of suits
+	 * 	and the seed that every random choice is made from.
+	 * @param width The width of the boards
+	 * @param height The height of the boards
+	 * @param suits The number of different suits, from 1 to PuzzlePiece.MAX_SUIT
+	 * @param seed The seed; the same seed always gives the same puzzles
+	 * @param bordered Whether the sides facing the outside are EDGE
+	 */
+	public UniquePuzzleGenerator(int width, int height, int suits, long seed, boolean bordered) {
+		if (width < 1 || height < 1)
+			throw new IllegalArgumentException("The board must be at least 1x1");
+		if (suits < 1 || suits > PuzzlePiece.MAX_SUIT)
+			throw new IllegalArgumentException("suits must be from 1 to " + PuzzlePiece.MAX_SUIT);
+		this.width = width;
+		this.height = height;
+		this.suits = suits;
+		this.seed = seed;
+		this.bordered = bordered;
+	}
+
+	/**
+	 * Makes puzzles on every thread and writes them out in order.
+	 * @param count The number of puzzles to make
+	 * @param out Where to write them; flushed after each puzzle
+	 * @return The number of puzzles written, which is less than count only
+	 * 	if some puzzle could not be made unique
+	 */
+	public int generate(int count, Writer out) throws IOException {
+		long begin = System.nanoTime();
+		tilings.set(0);
+		changes.set(0);
+		cutOffs.set(0);
+		written = 0;
+		ExecutorService pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "Puzzle generator");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		try {
+			ArrayList<Future<PuzzlePiece[]>> puzzles = new ArrayList<Future<PuzzlePiece[]>>();
+			for (int i = 0; i < count; i++) {
+				final int index = i;
+				puzzles.add(pool.submit(new Callable<PuzzlePiece[]>() {
+					public PuzzlePiece[] call() {
+						return makePuzzle(index);
+					}
+				}));
+			}
+			for (Future<PuzzlePiece[]> puzzle : puzzles) {
+				PuzzlePiece[] bank = puzzle.get();
+				if (bank == null)
+					continue;
+				PuzzleGenerator.write(width, height, bank, out);
+				written++;
+				elapsed = System.nanoTime() - begin;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		} finally {
+			pool.shutdownNow();
+			elapsed = System.nanoTime() - begin;
+		}
+		return written;
+	}
+
+	/**
+	 * Makes one puzzle of the batch. The same index always gives the same
+	 * 	puzzle.
+	 * @param index The position of the puzzle in the batch
+	 * @return The bank, shuffled and turned, or null if no unique puzzle
+	 * 	was found
+	 */
+	public PuzzlePiece[] makePuzzle(int index) {
+		Random r = new Random(TranspositionTable.mix(seed ^ TranspositionTable.mix(index)));
+		for (int t = 0; t < MAX_TILINGS; t++) {
+			tilings.incrementAndGet();
+			Grid tiling = tile(r);
+			int[] origin = new int[width * height];
+			for (int c = 0; c <= CHANGES_PER_CELL * width * height; c++) {
+				PuzzlePiece[] bank = cut(tiling, r, origin);
+				Uniqueness u = check(bank);
+				if (u == null)
+					break;
+				if (u.isUnique())
+					return bank;
+				if (!change(tiling, u, origin, r))
+					break;
+				changes.incrementAndGet();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return A grid filled with pieces whose touching sides all match: a
+	 * 	PuzzleGenerator's bank, laid out as its solution
+	 */
+	private Grid tile(Random r) {
+		PuzzleGenerator gen = new PuzzleGenerator(width, height, suits, r.nextLong(), bordered);
+		PuzzlePiece[] bank = gen.generate();
+		Solution s = gen.getSolution();
+		Grid g = new Grid(width, height);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				PuzzlePiece p = bank[s.getPiece(x, y)];
+				while (p.getRotation() != s.getRotation(x, y))
+					p.rotate();
+				g.setCell(x, y, p);
+			}
+		}
+		return g;
+	}
+
+	private int randomSide(Random r) {
+		int suit = r.nextInt(suits) + 1;
+		return r.nextBoolean() ? suit : -suit;
+	}
+
+	/**
+	 * Cuts a tiling into a bank: new pieces with the same sides, in a
+	 * 	random order and each given a random rotation.
+	 * @param origin Filled in with the cell of the tiling, y * width + x,
+	 * 	that each piece of the bank was cut from. A solution's rotations
+	 * 	are of the pieces' sides, not of their random rotations, so the
+	 * 	cell is all it takes to trace a piece back.
+	 * @return The bank
+	 */
+	private PuzzlePiece[] cut(Grid tiling, Random r, int[] origin) {
+		PuzzlePiece[] bank = new PuzzlePiece[width * height];
+		for (int c = 0; c < bank.length; c++) {
+			origin[c] = c;
+			PuzzlePiece p = tiling.getCell(c % width, c / width);
+			bank[c] = new PuzzlePiece(p.getSide(PuzzlePiece.NORTH), p.getSide(PuzzlePiece.EAST),
+					p.getSide(PuzzlePiece.SOUTH), p.getSide(PuzzlePiece.WEST));
+			for (int t = r.nextInt(4); t > 0; t--)
+				bank[c].rotate();
+		}
+		for (int i = bank.length - 1; i > 0; i--) {
+			int j = r.nextInt(i + 1);
+			PuzzlePiece t = bank[i];
+			bank[i] = bank[j];
+			bank[j] = t;
+			int o = origin[i];
+			origin[i] = origin[j];
+			origin[j] = o;
+		}
+		return bank;
+	}
+
+	/**
+	 * Looks for a second solution of a bank with Uniqueness.check(), within
+	 * 	the node limit.
+	 * @return The verdict, or null if the check was cut off
+	 */
+	private Uniqueness check(PuzzlePiece[] bank) {
+		Solver solver = new Solver(width, height, bank);
+		//Proving there is no second solution means searching everything,
+		//which a bordered board does fastest edge first and any other
+		//board fastest from the centre out
+		solver.setOrdering(bordered ? Solver.ROW_MAJOR : Solver.SPIRAL);
+		solver.setSymmetryPruning(true);
+		solver.setNodeLimit(nodeLimit);
+		Uniqueness u = Uniqueness.check(solver, bank);
+		if (u == null)
+			cutOffs.incrementAndGet();
+		return u;
+	}
+
+	/**
+	 * Gives an inside edge of the tiling a new side, changing the pieces on
+	 * 	both sides of it. The edge belongs to the cell one of the pieces the
+	 * 	two solutions put differently was cut from.
+	 * @param origin The cell of the tiling each piece of the bank was cut from
+	 * @return false if there is no such edge to change
+	 */
+	private boolean change(Grid tiling, Uniqueness u, int[] origin, Random r) {
+		Solution a = u.getSolution();
+		Solution b = u.getSecondSolution();
+		ArrayList<Integer> differ = new ArrayList<Integer>();
+		for (int y = 0; y < height; y++)
+			for (int x = 0; x < width; x++)
+				if (a.getPiece(x, y) != b.getPiece(x, y) || a.getRotation(x, y) != b.getRotation(x, y))
+					differ.add(origin[a.getPiece(x, y)]);
+		if (differ.isEmpty())
+			return false;
+		int c = differ.get(r.nextInt(differ.size()));
+		int x = c % width;
+		int y = c / width;
+		//The neighbours across each of the cell's inside edges
+		ArrayList<Integer> sides = new ArrayList<Integer>();
+		if (y > 0)
+			sides.add(PuzzlePiece.NORTH);
+		if (x < width - 1)
+			sides.add(PuzzlePiece.EAST);
+		if (y < height - 1)
+			sides.add(PuzzlePiece.SOUTH);
+		if (x > 0)
+			sides.add(PuzzlePiece.WEST);
+		if (sides.isEmpty())
+			return false;
+		int direction = sides.get(r.nextInt(sides.size()));
+		int nx = direction == PuzzlePiece.EAST ? x + 1 : direction == PuzzlePiece.WEST ? x - 1 : x;
+		int ny = direction == PuzzlePiece.SOUTH ? y + 1 : direction == PuzzlePiece.NORTH ? y - 1 : y;
+		int old = tiling.getCell(x, y).getSide(direction);
+		int side = randomSide(r);
+		if (side == old)
+			side = -side;
+		tiling.setCell(x, y, withSide(tiling.getCell(x, y), direction, side));
+		tiling.setCell(nx, ny, withSide(tiling.getCell(nx, ny), (direction + 180) % 360, -side));
+		return true;
+	}
+
+	/**
+	 * @return A new piece like p, unturned, but with a different side in one direction
+	 */
+	private static PuzzlePiece withSide(PuzzlePiece p, int direction, int side) {
+		int[] s = new int[4];
+		for (int d = 0; d < 4; d++)
+			s[d] = d * 90 == direction ? side : p.getSide(d * 90);
+		return new PuzzlePiece(s[0], s[1], s[2], s[3]);
+	}
+
+	/**
+	 * Sets the number of threads generate() makes puzzles on.
+	 * @param threads The number of threads, at least 1
+	 */
+	public void setThreads(int threads) {
+		this.threads = Math.max(1, threads);
+	}
+
+	/**
+	 * Sets how many placements a uniqueness check may make before the
+	 * 	tiling is given up on as too hard to check.
+	 * @param limit The number of placements, at least 1
+	 */
+	public void setNodeLimit(long limit) {
+		nodeLimit = Math.max(1, limit);
+	}
+
+	/**
+	 * @return The number of puzzles the last batch wrote
+	 */
+	public int getPuzzleCount() {
+		return written;
+	}
+
+	/**
+	 * @return The number of tilings the last batch made, kept or not
+	 */
+	public long getTilingCount() {
+		return tilings.get();
+	}
+
+	/**
+	 * @return The number of edges the last batch changed to break ties
+	 */
+	public long getChangeCount() {
+		return changes.get();
+	}
+
+	/**
+	 * @return The number of uniqueness checks in the last batch that were
+	 * 	cut off at the node limit
+	 */
+	public long getCutOffCount() {
+		return cutOffs.get();
+	}
+
+	/**
+	 * @return The puzzles the last batch wrote per second of its running time
+	 */
+	public double getPuzzlesPerSecond() {
+		return elapsed == 0 ? 0 : written * 1e9 / elapsed;
+	}
+
+	/**
+	 * Picks a number of suits that makes unique puzzles quickly. With too
+	 * 	few, most tilings have many solutions and the checks run long; a
+	 * 	board without a border needs more, since every piece can then go
+	 * 	in every cell.
+	 * @return The number of suits for a board of this size
+	 */
+	public static int defaultSuits(int width, int height, boolean bordered) {
+		int size = Math.max(width, height);
+		return Math.min(PuzzlePiece.MAX_SUIT, bordered ? size / 2 + 2 : 2 * size + 2);
+	}
+
+	/**
+	 * Writes a batch of unique puzzles to a file and reports the throughput.
+	 * 	Arguments: count width height file [suits [seed [bordered]]], where
+	 * 	suits 0 or left out means defaultSuits()
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 4) {
+			System.err.println("Usage: java UniquePuzzleGenerator count width height file [suits [seed [bordered]]]");
+			return;
+		}
+		int count = Integer.parseInt(args[0]);
+		int width = Integer.parseInt(args[1]);
+		int height = Integer.parseInt(args[2]);
+		long seed = args.length > 5 ? Long.parseLong(args[5]) : System.nanoTime();
+		boolean bordered = args.length > 6 && Boolean.parseBoolean(args[6]);
+		int suits = args.length > 4 ? Integer.parseInt(args[4]) : 0;
+		if (suits == 0)
+			suits = defaultSuits(width, height, bordered);
+		UniquePuzzleGenerator gen = new UniquePuzzleGenerator(width, height, suits, seed, bordered);
+		Writer out = new BufferedWriter(new FileWriter(args[3]), 1 << 16);
+		try {
+			gen.generate(count, out);
+		} finally {
+			out.close();
+		}
+		System.out.println(gen.getPuzzleCount() + " puzzles in " + gen.elapsed / 1000000 + " ms, "
+				+ String.format("%.1f", gen.getPuzzlesPerSecond()) + " puzzles/s, seed " + seed + ", "
+				+ gen.getTilingCount() + " tilings, " + gen.getChangeCount() + " edges changed, "
+				+ gen.getCutOffCount() + " checks cut off");
+	}
+}
@@ -0,0 +1,135 @@
+/**
+ * Uniqueness.java: Whether a puzzle has no solution, exactly one, or more,
+ * 	with the solutions found as witnesses.
+ *
+ * Solutions are told apart by what they look like, not by which pieces
+ * 	went where: swapping two identical pieces, or turning a piece whose
+ * 	sides are all alike, does not make a new solution, and neither does
+ * 	turning the whole board (through 180 degrees, or on a square board,
+ * 	90). So the checker only has to find a second solution that looks
+ * 	different from the first to know the puzzle is not unique.
+ *
+ */
+
+public final class Uniqueness {
+
+	//Verdicts
+	public static final int NONE = 0;
+	public static final int UNIQUE = 1;
+	public static final int MULTIPLE = 2;
+
+	private final int verdict;
+	private final Solution first;
+	private final Solution second;
+
+	/**
+	 * Constructor used by check() and Player.checkUniqueness().
+	 * @param first The first solution found, or null
+	 * @param second A second solution that looks different, or null
+	 */
+	Uniqueness(Solution first, Solution second) {
+		this.first = first;
+		this.second = second;
+		verdict = first == null ? NONE : second == null ? UNIQUE : MULTIPLE;
+	}
+
+	/**
+	 * @return NONE, UNIQUE or MULTIPLE
+	 */
+	public int getVerdict() {
+		return verdict;
+	}
+
+	/**
+	 * @return Whether the puzzle has exactly one solution
+	 */
+	public boolean isUnique() {
+		return verdict == UNIQUE;
+	}
+
+	/**
+	 * @return A solution, with piece indices referring to the bank the
+	 * 	check was made on, or null if there is none
+	 */
+	public Solution getSolution() {
+		return first;
+	}
+
+	/**
+	 * @return A second solution that looks different from getSolution(),
+	 * 	even turned, or null if the puzzle is unique or has no solution
+	 */
+	public Solution getSecondSolution() {
+		return second;
+	}
+
+	/**
+	 * Looks for a second solution that does not look like the first, one
+	 * 	solution after another on a single thread.
+	 * @param solver A solver of the puzzle, set up but not yet started; a
+	 * 	node limit may be set on it
+	 * @param pieces The bank the solver was made with
+	 * @return The verdict, or null if the solver reached its node limit
+	 * 	before the verdict was known
+	 */
+	static Uniqueness check(Solver solver, PuzzlePiece[] pieces) {
+		Solution first = null;
+		for (boolean more = solver.solve(); more; more = solver.next()) {
+			Solution s = solver.toSolution();
+			if (first == null)
+				first = s;
+			else if (!looksAlike(first, s, pieces))
+				return new Uniqueness(first, s);
+		}
+		if (solver.isCutOff())
+			return null;
+		return new Uniqueness(first, null);
+	}
+
+	/**
+	 * Checks whether two solutions look the same, either as they are or
+	 * 	with one of them turned as a whole.
+	 * @param a A solution
+	 * @param b Another solution of the same board
+	 * @param pieces The bank both solutions' piece indices refer to
+	 * @return Whether every cell of a shows the same sides as the same
+	 * 	cell of b, or of b turned
+	 */
+	public static boolean looksAlike(Solution a, Solution b, PuzzlePiece[] pieces) {
+		boolean square = a.getWidth() == a.getHeight();
+		for (int turns = 0; turns < 4; turns += square ? 1 : 2)
+			if (looksAlike(a, b, pieces, turns))
+				return true;
+		return false;
+	}
+
+	/**
+	 * @return Whether a looks the same as b turned clockwise by a number of
+	 * 	quarter turns; an odd number only on a square board
+	 */
+	private static boolean looksAlike(Solution a, Solution b, PuzzlePiece[] pieces, int turns) {
+		int w = a.getWidth();
+		int h = a.getHeight();
+		for (int y = 0; y < h; y++) {
+			for (int x = 0; x < w; x++) {
+				//The cell of b that ends up at (x, y) once b is turned
+				int bx = turns == 0 ? x : turns == 1 ? y : turns == 2 ? w - 1 - x : h - 1 - y;
+				int by = turns == 0 ? y : turns == 1 ? w - 1 - x : turns == 2 ? h - 1 - y : x;
+				if (look(a, x, y, pieces, 0) != look(b, bx, by, pieces, turns))
+					return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return The packed sides shown at a cell of a solution, turned a
+	 * 	number of extra quarter turns
+	 */
+	private static int look(Solution s, int x, int y, PuzzlePiece[] pieces, int turns) {
+		int p = s.getPiece(x, y);
+		if (p < 0)
+			return 0;
+		return Integer.rotateLeft(pieces[p].getPackedSides(), (s.getRotation(x, y) / 90 + turns & 3) * 8);
+	}
+}